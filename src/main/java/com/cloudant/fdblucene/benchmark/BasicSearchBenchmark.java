@@ -4,10 +4,8 @@ import java.io.IOException;
 import java.nio.file.FileSystem;
 import java.util.concurrent.TimeUnit;
 
-import org.apache.lucene.index.Term;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
-import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.store.Directory;
 
@@ -23,6 +21,7 @@ import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.Threads;
 import org.openjdk.jmh.annotations.Timeout;
 import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
 import org.openjdk.jmh.runner.Runner;
 import org.openjdk.jmh.runner.RunnerException;
 import org.openjdk.jmh.runner.options.Options;
@@ -38,11 +37,9 @@ public class BasicSearchBenchmark {
     @OutputTimeUnit(TimeUnit.SECONDS)
     @Benchmark
     public long searchFDB(FDBSearchSetup setup) throws Exception {
-        int randomSearchPosition = setup.random.nextInt(setup.searchTermList.size());
-        String term = setup.searchTermList.get(randomSearchPosition);
+        Query query = setup.searchQueries[setup.random.nextInt(setup.searchQueries.length)];
         // we don't actually care about the number of hits
-        TopDocs tp = setup.searcher.search(new TermQuery(new Term("body", term)),
-            setup.topNDocs);
+        TopDocs tp = setup.searcher.search(query, setup.topNDocs);
         return tp.totalHits.value;
     }
 
@@ -54,16 +51,17 @@ public class BasicSearchBenchmark {
     @OutputTimeUnit(TimeUnit.SECONDS)
     @Benchmark
     public long searchNIOS(NIOSSearchSetup setup) throws Exception {
-        int randomSearchPosition = setup.random.nextInt(setup.searchTermList.size());
-        String term = setup.searchTermList.get(randomSearchPosition);
+        Query query = setup.searchQueries[setup.random.nextInt(setup.searchQueries.length)];
         // we don't actually care about the number of hits
-        TopDocs tp = setup.searcher.search(new TermQuery(new Term("body", term)),
-            setup.topNDocs);
+        TopDocs tp = setup.searcher.search(query, setup.topNDocs);
         return tp.totalHits.value;
     }
 
     public static void main(final String[] args) throws RunnerException {
-        final Options opt = new OptionsBuilder().include(BasicSearchBenchmark.class.getSimpleName()).build();
+        final Options opt = new OptionsBuilder()
+                .include(BasicSearchBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
         new Runner(opt).run();
     }
 
@@ -0,0 +1,338 @@
+package com.cloudant.fdblucene.benchmark;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import org.apache.lucene.codecs.lucene80.Lucene80Codec;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.DoubleDocValuesField;
+import org.apache.lucene.document.DoublePoint;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.CodecReader;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.FilterCodecReader;
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexWriterConfig.OpenMode;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.LineFileDocs;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.Version;
+
+/**
+ * A deterministic LineFileDocs index that is built once per machine and then
+ * copied into the directory under test.
+ *
+ * Corpora live under the directory named by the corpus system property
+ * (default java.io.tmpdir/fdblucene-corpus), one per document count and seed.
+ * Each holds the index, a manifest describing it and the sample of search
+ * terms taken while building, so the whole directory can be shipped to
+ * another machine to reproduce a run.
+ *
+ */
+public final class BenchmarkCorpus {
+
+    private static final String INDEX = "index";
+    private static final String MANIFEST = "manifest.properties";
+    private static final String TERMS = "terms.txt";
+
+    /**
+     * Bump when the documents change shape so old corpora are not reused.
+     */
+    private static final int FORMAT = 2;
+
+    /**
+     * A DoublePoint with doc values, uniform over [0, 1000), like the numeric
+     * fields CouchDBIndexer produces.
+     */
+    public static final String VALUE_FIELD = "value";
+
+    private final Path path;
+    private final Properties manifest;
+    private final List<String> searchTerms;
+
+    private BenchmarkCorpus(final Path path, final Properties manifest, final List<String> searchTerms) {
+        this.path = path;
+        this.manifest = manifest;
+        this.searchTerms = searchTerms;
+    }
+
+    /**
+     * Open the corpus for these settings, building it first if this machine
+     * does not have it yet.
+     */
+    public static BenchmarkCorpus open(final int docs, final long seed, final int maxSearchTerms)
+            throws IOException {
+        final Path root = FileSystems.getDefault().getPath(
+                System.getProperty("corpus", System.getProperty("java.io.tmpdir") + "/fdblucene-corpus"));
+        final Path path = root.resolve(String.format("linedocs-v%d-%d-seed-%d-terms-%d", FORMAT, docs, seed, maxSearchTerms));
+        if (!Files.exists(path.resolve(MANIFEST))) {
+            Files.createDirectories(root);
+            final Path tmp = Files.createTempDirectory(root, path.getFileName() + ".tmp");
+            build(tmp, docs, seed, maxSearchTerms);
+            try {
+                Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE);
+                System.out.println("Built corpus " + path);
+            } catch (final IOException e) {
+                if (!Files.exists(path.resolve(MANIFEST))) {
+                    throw e;
+                }
+                // another fork built it first
+                deleteRecursively(tmp);
+            }
+        }
+        final BenchmarkCorpus result = load(path);
+        result.verify(docs, seed);
+        return result;
+    }
+
+    public List<String> getSearchTerms() {
+        return searchTerms;
+    }
+
+    public int getDocCount() {
+        return Integer.parseInt(manifest.getProperty("docCount"));
+    }
+
+    public String getChecksum() {
+        return manifest.getProperty("checksum");
+    }
+
+    /**
+     * Copy the index into target, which should be empty, committing it there.
+     */
+    public void copyTo(final Directory target) throws IOException {
+        try (final Directory source = FSDirectory.open(path.resolve(INDEX))) {
+            final List<String> names = new ArrayList<>();
+            String segments = null;
+            for (final String name : source.listAll()) {
+                if (name.startsWith(IndexFileNames.SEGMENTS)) {
+                    segments = name;
+                } else if (!name.equals(IndexWriter.WRITE_LOCK_NAME)) {
+                    target.copyFrom(source, name, name, IOContext.DEFAULT);
+                    names.add(name);
+                }
+            }
+            target.sync(names);
+            // the commit point goes last so a partial copy is never readable
+            target.copyFrom(source, segments, segments, IOContext.DEFAULT);
+            target.sync(Collections.singleton(segments));
+            target.syncMetaData();
+        }
+    }
+
+    /**
+     * Copy the index into target, which should be empty, rewritten as exactly
+     * segments segments of contiguous documents.
+     */
+    public void copyTo(final Directory target, final int segments) throws IOException {
+        if (segments < 1) {
+            throw new IllegalArgumentException("segments must be at least 1.");
+        }
+        final IndexWriterConfig config = new IndexWriterConfig();
+        config.setUseCompoundFile(false);
+        config.setCodec(new Lucene80Codec());
+        config.setMergePolicy(NoMergePolicy.INSTANCE);
+        config.setOpenMode(OpenMode.CREATE);
+        try (final Directory source = FSDirectory.open(path.resolve(INDEX));
+                final DirectoryReader reader = DirectoryReader.open(source);
+                final IndexWriter writer = new IndexWriter(target, config)) {
+            final int maxDoc = reader.maxDoc();
+            for (int i = 0; i < segments; i++) {
+                final int start = (int) ((long) maxDoc * i / segments);
+                final int end = (int) ((long) maxDoc * (i + 1) / segments);
+                final List<CodecReader> slices = new ArrayList<>();
+                for (final LeafReaderContext leaf : reader.leaves()) {
+                    final int leafEnd = leaf.docBase + leaf.reader().maxDoc();
+                    if (leaf.docBase < end && leafEnd > start) {
+                        slices.add(new DocRangeReader((CodecReader) leaf.reader(),
+                                start - leaf.docBase, end - leaf.docBase));
+                    }
+                }
+                // each call merges its readers into one new segment
+                writer.addIndexes(slices.toArray(new CodecReader[slices.size()]));
+            }
+            writer.commit();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (%d docs, checksum %s)", path, getDocCount(), getChecksum());
+    }
+
+    /**
+     * Hides every document outside [from, to) so addIndexes drops it.
+     */
+    private static final class DocRangeReader extends FilterCodecReader {
+        private final int from;
+        private final int to;
+        private final Bits liveDocs;
+
+        private DocRangeReader(final CodecReader in, final int from, final int to) {
+            super(in);
+            this.from = Math.max(0, from);
+            this.to = Math.min(in.maxDoc(), to);
+            final Bits inLiveDocs = in.getLiveDocs();
+            this.liveDocs = new Bits() {
+                @Override
+                public boolean get(final int index) {
+                    return index >= DocRangeReader.this.from && index < DocRangeReader.this.to
+                            && (inLiveDocs == null || inLiveDocs.get(index));
+                }
+
+                @Override
+                public int length() {
+                    return in.maxDoc();
+                }
+            };
+        }
+
+        @Override
+        public Bits getLiveDocs() {
+            return liveDocs;
+        }
+
+        @Override
+        public int numDocs() {
+            int result = 0;
+            for (int i = from; i < to; i++) {
+                if (liveDocs.get(i)) {
+                    result++;
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public CacheHelper getCoreCacheHelper() {
+            return null;
+        }
+
+        @Override
+        public CacheHelper getReaderCacheHelper() {
+            return null;
+        }
+    }
+
+    private static void build(final Path path, final int docs, final long seed, final int maxSearchTerms)
+            throws IOException {
+        final Random random = new Random(seed);
+        final List<String> searchTerms = new ArrayList<>();
+        final CRC32 checksum = new CRC32();
+
+        final IndexWriterConfig config = new IndexWriterConfig();
+        config.setUseCompoundFile(false);
+        config.setCodec(new Lucene80Codec());
+        try (final Directory dir = FSDirectory.open(path.resolve(INDEX));
+                final IndexWriter writer = new IndexWriter(dir, config);
+                final LineFileDocs lineFileDocs = new LineFileDocs(random, LuceneTestCase.DEFAULT_LINE_DOCS_FILE)) {
+            final StringField idField = new StringField("_id", "", Store.YES);
+            final DoublePoint valueField = new DoublePoint(VALUE_FIELD, 0.0);
+            final DoubleDocValuesField valueDocValuesField = new DoubleDocValuesField(VALUE_FIELD, 0.0);
+            for (int i = 0; i < docs; i++) {
+                // LineFileDocs hands back the same Document each time
+                final Document doc = lineFileDocs.nextDoc();
+                if (doc.getField("_id") == null) {
+                    doc.add(idField);
+                    doc.add(valueField);
+                    doc.add(valueDocValuesField);
+                }
+                idField.setStringValue("doc-" + (i + 1));
+                final double value = random.nextDouble() * 1000;
+                valueField.setDoubleValue(value);
+                valueDocValuesField.setDoubleValue(value);
+
+                // Look through the body's terms, grab a String term, store it
+                // so that it can be randomly chosen for search later on
+                final String body = doc.get("body");
+                if (body != null) {
+                    checksum.update(body.getBytes(StandardCharsets.UTF_8));
+                    final String[] terms = body.split("\\s+");
+                    if (searchTerms.size() < maxSearchTerms) {
+                        searchTerms.add(terms[random.nextInt(terms.length)]);
+                    }
+                }
+                writer.addDocument(doc);
+            }
+            writer.commit();
+        }
+
+        try (final Writer out = Files.newBufferedWriter(path.resolve(TERMS), StandardCharsets.UTF_8)) {
+            for (final String term : searchTerms) {
+                out.write(term);
+                out.write('\n');
+            }
+        }
+
+        final Properties manifest = new Properties();
+        manifest.setProperty("format", Integer.toString(FORMAT));
+        manifest.setProperty("docCount", Integer.toString(docs));
+        manifest.setProperty("seed", Long.toString(seed));
+        manifest.setProperty("checksum", Long.toHexString(checksum.getValue()));
+        manifest.setProperty("searchTerms", Integer.toString(searchTerms.size()));
+        manifest.setProperty("luceneVersion", Version.LATEST.toString());
+        try (final Writer out = Files.newBufferedWriter(path.resolve(MANIFEST), StandardCharsets.UTF_8)) {
+            manifest.store(out, "fdblucene benchmark corpus");
+        }
+    }
+
+    private static BenchmarkCorpus load(final Path path) throws IOException {
+        final Properties manifest = new Properties();
+        try (final Reader in = Files.newBufferedReader(path.resolve(MANIFEST), StandardCharsets.UTF_8)) {
+            manifest.load(in);
+        }
+        final List<String> searchTerms = Collections.unmodifiableList(
+                Files.readAllLines(path.resolve(TERMS), StandardCharsets.UTF_8));
+        return new BenchmarkCorpus(path, manifest, searchTerms);
+    }
+
+    private void verify(final int docs, final long seed) throws IOException {
+        if (getDocCount() != docs || !Long.toString(seed).equals(manifest.getProperty("seed"))) {
+            throw new IOException("Corpus manifest does not match " + path);
+        }
+        if (!Version.LATEST.toString().equals(manifest.getProperty("luceneVersion"))) {
+            throw new IOException("Corpus at " + path + " was built with Lucene "
+                    + manifest.getProperty("luceneVersion") + ", delete it to rebuild.");
+        }
+        try (final Directory dir = FSDirectory.open(path.resolve(INDEX))) {
+            final SegmentInfos infos = SegmentInfos.readLatestCommit(dir);
+            if (infos.totalMaxDoc() != docs) {
+                throw new IOException("Corpus index at " + path + " is incomplete.");
+            }
+        }
+    }
+
+    private static void deleteRecursively(final Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            try (final DirectoryStream<Path> children = Files.newDirectoryStream(path)) {
+                for (final Path child : children) {
+                    deleteRecursively(child);
+                }
+            }
+        }
+        Files.deleteIfExists(path);
+    }
+
+}
@@ -0,0 +1,35 @@
+package com.cloudant.fdblucene.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.openjdk.jmh.Main;
+
+/**
+ * The benchmarks jar's entry point: JMH's own command line, with -prof gc
+ * added unless it is already given, so that every run reports allocation
+ * per operation, GC count and GC time alongside its scores.
+ *
+ */
+public final class BenchmarkMain {
+
+    public static void main(final String[] args) throws Exception {
+        final List<String> result = new ArrayList<>(Arrays.asList(args));
+        if (!hasGCProfiler(args)) {
+            result.add(0, "-prof");
+            result.add(1, "gc");
+        }
+        Main.main(result.toArray(new String[result.size()]));
+    }
+
+    private static boolean hasGCProfiler(final String[] args) {
+        for (int i = 0; i + 1 < args.length; i++) {
+            if ("-prof".equals(args[i]) && args[i + 1].split(":")[0].equals("gc")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,331 @@
+package com.cloudant.fdblucene.benchmark;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.codecs.lucene80.Lucene80Codec;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.UnicodeUtil;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Timeout;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.apple.foundationdb.Database;
+import com.apple.foundationdb.FDB;
+import com.cloudant.fdblucene.FDBDirectory;
+import com.cloudant.fdblucene.benchmark.DocumentGenerator.DocSize;
+import com.cloudant.fdblucene.store.IOMetrics;
+
+/**
+ * Indexing throughput from concurrent threads sharing one IndexWriter, each
+ * adding batchSize documents per addDocuments call, across RAM buffer and
+ * maxBufferedDocs (-1 to flush by RAM alone) settings.
+ *
+ * Run with -t for a thread count, or through main, which repeats the suite
+ * for each count in the threads system property (default 1, 2, 4, 8, 16) and
+ * prints docs/sec and MB/sec tables. The docs and bytes counters give docs/sec
+ * and UTF-8 bytes/sec of field text, and on FDB the transactions and retries
+ * counters give the transactions and retries per second FDBDirectory ran.
+ *
+ * Each thread generates its own documents, interleaving ordinals with the
+ * others, so the index holds the same documents whatever the thread count.
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 1, time = 30, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 1, timeUnit = TimeUnit.MINUTES)
+@Timeout(time = 15, timeUnit = TimeUnit.MINUTES)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BulkIndexingBenchmark {
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class BulkCounters {
+        public long docs;
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            docs = 0;
+            bytes = 0;
+        }
+    }
+
+    /**
+     * The shared Database's transactions and retries, reported by the first
+     * thread once the iteration's teardown has counted them.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class TransactionCounters {
+        public long transactions;
+        public long retries;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            transactions = 0;
+            retries = 0;
+        }
+
+        @TearDown(Level.Iteration)
+        public void collect(final FDBBulkState state, final ThreadParams threads) {
+            if (threads.getThreadIndex() == 0) {
+                transactions = state.transactions;
+                retries = state.retries;
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Worker {
+        private final long seed = Long.getLong("seed", 42L);
+        private DocumentGenerator documents;
+
+        /** id, linedocs or synthetic, see DocumentGenerator. */
+        @Param({ "linedocs" })
+        String generator;
+
+        /** tiny, median, huge or mixed. */
+        @Param({ "median" })
+        String docSize;
+
+        @Param({ "1", "100" })
+        int batchSize;
+
+        @Setup(Level.Iteration)
+        public void setup(final ThreadParams threads) throws IOException {
+            documents = DocumentGenerator.create(generator, seed, DocSize.parse(docSize),
+                    threads.getThreadIndex(), threads.getThreadCount());
+        }
+
+        @TearDown(Level.Iteration)
+        public void teardown() throws IOException {
+            documents.close();
+        }
+
+        long index(final IndexWriter writer, final BulkCounters counters) throws IOException {
+            final List<Document> batch = documents.next(batchSize);
+            final long result = writer.addDocuments(batch);
+            counters.docs += batch.size();
+            for (final Document doc : batch) {
+                counters.bytes += textBytes(doc);
+            }
+            return result;
+        }
+
+        private static long textBytes(final Document doc) {
+            long result = 0;
+            for (final IndexableField field : doc) {
+                final String string = field.stringValue();
+                if (string != null) {
+                    result += UnicodeUtil.calcUTF16toUTF8Length(string, 0, string.length());
+                    continue;
+                }
+                final BytesRef binary = field.binaryValue();
+                if (binary != null) {
+                    result += binary.length;
+                }
+            }
+            return result;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static abstract class AbstractBulkState {
+        protected Database db;
+        protected CountingDatabase counting;
+        private Directory dir;
+        IndexWriter writer;
+        long transactions;
+        long retries;
+
+        @Param({ "16", "256" })
+        double ramBufferMB;
+
+        @Param({ "-1", "1000" })
+        int maxBufferedDocs;
+
+        public abstract Directory getDirectory(final Path path) throws IOException;
+
+        @Setup(Level.Iteration)
+        public void setup() throws Exception {
+            dir = IOMetrics.wrap(getDirectory(generateTestPath()));
+            cleanDirectory();
+            final IndexWriterConfig config = new IndexWriterConfig();
+            config.setUseCompoundFile(false);
+            config.setCodec(new Lucene80Codec());
+            config.setRAMBufferSizeMB(ramBufferMB);
+            config.setMaxBufferedDocs(maxBufferedDocs);
+            writer = new IndexWriter(dir, config);
+            if (counting != null) {
+                counting.reset();
+            }
+        }
+
+        @TearDown(Level.Iteration)
+        public void teardown() throws Exception {
+            if (counting != null) {
+                transactions = counting.transactions();
+                retries = counting.retries();
+            }
+            writer.rollback();
+            cleanDirectory();
+            dir.close();
+        }
+
+        private void cleanDirectory() throws IOException {
+            for (final String name : dir.listAll()) {
+                dir.deleteFile(name);
+            }
+        }
+
+        private Path generateTestPath() {
+            final String dir = System.getProperty("dir");
+            if (dir == null) {
+                throw new Error("System property 'dir' not set.");
+            }
+            final FileSystem fileSystem = FileSystems.getDefault();
+            return fileSystem.getPath(dir);
+        }
+    }
+
+    public static class FDBBulkState extends AbstractBulkState {
+
+        @Param({ "1000", "10000", "100000" })
+        int pageSize;
+
+        @Param({ "1", "10", "100" })
+        int pagesPerTxn;
+
+        @Setup(Level.Trial)
+        public void startFDBNetworking() {
+            FDB.selectAPIVersion(600);
+            db = FDB.instance().open();
+            counting = new CountingDatabase(db);
+        }
+
+        @TearDown(Level.Trial)
+        public void closeFDB() {
+            db.close();
+        }
+
+        @Override
+        public Directory getDirectory(final Path path) throws IOException {
+            return FDBDirectory.open(counting.database(), path, pageSize, pageSize * pagesPerTxn);
+        }
+    }
+
+    public static class NIOFSBulkState extends AbstractBulkState {
+
+        @Override
+        public Directory getDirectory(final Path path) throws IOException {
+            return new NIOFSDirectory(path);
+        }
+    }
+
+    @Benchmark
+    public long indexFDB(final FDBBulkState state, final Worker worker, final BulkCounters counters,
+            final TransactionCounters transactions) throws IOException {
+        return worker.index(state.writer, counters);
+    }
+
+    @Benchmark
+    public long indexNIOFS(final NIOFSBulkState state, final Worker worker, final BulkCounters counters)
+            throws IOException {
+        return worker.index(state.writer, counters);
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        final List<Integer> threadCounts = new ArrayList<>();
+        for (final String count : System.getProperty("threads", "1,2,4,8,16").split(",")) {
+            threadCounts.add(Integer.parseInt(count.trim()));
+        }
+        final Map<String, List<String>> docsTable = new LinkedHashMap<>();
+        final Map<String, List<String>> mbTable = new LinkedHashMap<>();
+        final Map<String, List<String>> transactionsTable = new LinkedHashMap<>();
+        final Map<String, List<String>> retriesTable = new LinkedHashMap<>();
+        for (final int threads : threadCounts) {
+            final Options opt = new OptionsBuilder()
+                    .include(BulkIndexingBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build();
+            final Collection<RunResult> results = new Runner(opt).run();
+            for (final RunResult result : results) {
+                final String benchmark = result.getParams().getBenchmark();
+                final StringBuilder key = new StringBuilder(
+                        String.format("%-12s", benchmark.substring(benchmark.lastIndexOf('.') + 1)));
+                for (final String param : result.getParams().getParamsKeys()) {
+                    key.append(String.format(" %s=%s", param, result.getParams().getParam(param)));
+                }
+                docsTable.computeIfAbsent(key.toString(), k -> new ArrayList<>())
+                        .add(String.format("%12.1f", score(result, "docs")));
+                mbTable.computeIfAbsent(key.toString(), k -> new ArrayList<>())
+                        .add(String.format("%12.2f", score(result, "bytes") / 1048576.0));
+                if (result.getSecondaryResults().containsKey("transactions")) {
+                    transactionsTable.computeIfAbsent(key.toString(), k -> new ArrayList<>())
+                            .add(String.format("%12.1f", score(result, "transactions")));
+                    retriesTable.computeIfAbsent(key.toString(), k -> new ArrayList<>())
+                            .add(String.format("%12.2f", score(result, "retries")));
+                }
+            }
+        }
+        print("docs/sec", threadCounts, docsTable);
+        print("MB/sec", threadCounts, mbTable);
+        print("FDB transactions/sec", threadCounts, transactionsTable);
+        print("FDB retries/sec", threadCounts, retriesTable);
+    }
+
+    private static double score(final RunResult result, final String label) {
+        final Result<?> secondary = result.getSecondaryResults().get(label);
+        return secondary.getScore();
+    }
+
+    private static void print(final String title, final List<Integer> threadCounts,
+            final Map<String, List<String>> table) {
+        System.out.println();
+        System.out.println(title);
+        final StringBuilder header = new StringBuilder();
+        for (final int threads : threadCounts) {
+            header.append(String.format("%12s", threads + " threads"));
+        }
+        System.out.println(header);
+        for (final Map.Entry<String, List<String>> row : table.entrySet()) {
+            System.out.println(String.join("", row.getValue()) + "  " + row.getKey());
+        }
+    }
+
+}
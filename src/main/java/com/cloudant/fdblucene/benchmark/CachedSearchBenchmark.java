@@ -0,0 +1,187 @@
+package com.cloudant.fdblucene.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Timeout;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.cloudant.fdblucene.store.BlockCache;
+import com.cloudant.fdblucene.store.CachingDirectory;
+
+/**
+ * The BasicSearchBenchmark query through a CachingDirectory, across cache
+ * types and sizes. The warm benchmarks keep the cache across iterations, the
+ * cold ones empty it before each batch of COLD_QUERIES searches. Cache
+ * counters are printed after every iteration. The uncached benchmarks run
+ * the same searches straight against the directory, once, as the baseline.
+ *
+ * The block size defaults to 4096 and can be changed with the cacheBlockSize
+ * system property.
+ *
+ */
+public class CachedSearchBenchmark {
+
+    private static final int COLD_QUERIES = 100;
+    private static final int BLOCK_SIZE = Integer.getInteger("cacheBlockSize", 4096);
+
+    public static class CachedFDBSearchSetup extends FDBSearchSetup {
+
+        @Param({ "heap", "offheap" })
+        public String cache;
+
+        @Param({ "16", "64", "256" })
+        public int cacheMB;
+
+        public BlockCache blockCache;
+
+        @Override
+        public Directory getDirectory(final Path path) throws IOException {
+            blockCache = BlockCache.create(cache, cacheMB * 1024L * 1024L, BLOCK_SIZE);
+            return new CachingDirectory(super.getDirectory(path), blockCache);
+        }
+
+        @TearDown(Level.Iteration)
+        public void reportCache() {
+            System.out.println(blockCache);
+            blockCache.resetCounters();
+        }
+    }
+
+    public static class CachedNIOSSearchSetup extends NIOSSearchSetup {
+
+        @Param({ "heap", "offheap" })
+        public String cache;
+
+        @Param({ "16", "64", "256" })
+        public int cacheMB;
+
+        public BlockCache blockCache;
+
+        @Override
+        public Directory getDirectory(final Path path) throws IOException {
+            blockCache = BlockCache.create(cache, cacheMB * 1024L * 1024L, BLOCK_SIZE);
+            return new CachingDirectory(super.getDirectory(path), blockCache);
+        }
+
+        @TearDown(Level.Iteration)
+        public void reportCache() {
+            System.out.println(blockCache);
+            blockCache.resetCounters();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ColdFDBCache {
+        @Setup(Level.Iteration)
+        public void clear(final CachedFDBSearchSetup setup) {
+            setup.blockCache.clear();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ColdNIOSCache {
+        @Setup(Level.Iteration)
+        public void clear(final CachedNIOSSearchSetup setup) {
+            setup.blockCache.clear();
+        }
+    }
+
+    private static long search(final SearchSetup setup) throws IOException {
+        final Query query = setup.searchQueries[setup.random.nextInt(setup.searchQueries.length)];
+        final TopDocs tp = setup.searcher.search(query, setup.topNDocs);
+        return tp.totalHits.value;
+    }
+
+    @BenchmarkMode(Mode.Throughput)
+    @Fork(1)
+    @Warmup(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+    @Measurement(iterations = 3, time = 1, timeUnit = TimeUnit.MINUTES)
+    @Timeout(time = 15, timeUnit = TimeUnit.MINUTES)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Benchmark
+    public long searchWarmFDB(final CachedFDBSearchSetup setup) throws Exception {
+        return search(setup);
+    }
+
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Fork(1)
+    @Warmup(iterations = 2, batchSize = COLD_QUERIES)
+    @Measurement(iterations = 10, batchSize = COLD_QUERIES)
+    @Timeout(time = 15, timeUnit = TimeUnit.MINUTES)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Benchmark
+    public long searchColdFDB(final CachedFDBSearchSetup setup, final ColdFDBCache cold) throws Exception {
+        return search(setup);
+    }
+
+    @BenchmarkMode(Mode.Throughput)
+    @Fork(1)
+    @Warmup(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+    @Measurement(iterations = 3, time = 1, timeUnit = TimeUnit.MINUTES)
+    @Timeout(time = 15, timeUnit = TimeUnit.MINUTES)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Benchmark
+    public long searchWarmNIOS(final CachedNIOSSearchSetup setup) throws Exception {
+        return search(setup);
+    }
+
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Fork(1)
+    @Warmup(iterations = 2, batchSize = COLD_QUERIES)
+    @Measurement(iterations = 10, batchSize = COLD_QUERIES)
+    @Timeout(time = 15, timeUnit = TimeUnit.MINUTES)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Benchmark
+    public long searchColdNIOS(final CachedNIOSSearchSetup setup, final ColdNIOSCache cold) throws Exception {
+        return search(setup);
+    }
+
+    @BenchmarkMode(Mode.Throughput)
+    @Fork(1)
+    @Warmup(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+    @Measurement(iterations = 3, time = 1, timeUnit = TimeUnit.MINUTES)
+    @Timeout(time = 15, timeUnit = TimeUnit.MINUTES)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Benchmark
+    public long searchUncachedFDB(final FDBSearchSetup setup) throws Exception {
+        return search(setup);
+    }
+
+    @BenchmarkMode(Mode.Throughput)
+    @Fork(1)
+    @Warmup(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+    @Measurement(iterations = 3, time = 1, timeUnit = TimeUnit.MINUTES)
+    @Timeout(time = 15, timeUnit = TimeUnit.MINUTES)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Benchmark
+    public long searchUncachedNIOS(final NIOSSearchSetup setup) throws Exception {
+        return search(setup);
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        final Options opt = new OptionsBuilder().include(CachedSearchBenchmark.class.getSimpleName()).build();
+        new Runner(opt).run();
+    }
+
+}
@@ -0,0 +1,422 @@
+package com.cloudant.fdblucene.benchmark;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+import org.apache.lucene.codecs.lucene80.Lucene80Codec;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.MergePolicy;
+import org.apache.lucene.index.SoftDeletesRetentionMergePolicy;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TieredMergePolicy;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Timeout;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.apple.foundationdb.Database;
+import com.apple.foundationdb.FDB;
+import com.cloudant.fdblucene.FDBDirectory;
+import com.cloudant.fdblucene.benchmark.DocumentGenerator.DocSize;
+import com.cloudant.fdblucene.store.IOMetrics;
+import com.cloudant.fdblucene.store.IOMetrics.Counter;
+import com.cloudant.fdblucene.store.MeteringDirectory;
+
+/**
+ * New revisions and deletions of existing documents, as a CouchDB database
+ * sees them, applied to a copy of the benchmark corpus.
+ *
+ * The mix parameter weighs updates of an existing _id, deletes of one and
+ * inserts of new ones, in that order; the existing _id is drawn from a scrambled Zipfian
+ * with the given skew, 0 for uniform. deletes=soft marks old revisions with a
+ * soft deletes doc value instead of deleting them, keeping the most recent
+ * softRetention operations (system property, default 0) through merges.
+ *
+ * The index carries over from one iteration to the next, so the report
+ * printed after each shows how it degrades: the deleted docs ratio, the docs
+ * merges reclaimed and the bytes they wrote, and TermQuery latency against
+ * the baseline taken before any churn. A final forceMergeDeletes is timed at
+ * the end of the trial. baseDocs (system property, default 100000) sets the
+ * corpus size.
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 1, time = 30, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.MINUTES)
+@Timeout(time = 15, timeUnit = TimeUnit.MINUTES)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ChurnBenchmark {
+
+    private static final String SOFT_DELETES = "__soft_deletes";
+    private static final String SEQ = "__seq";
+    private static final int SEARCHES = 500;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class ChurnCounters {
+        public long updates;
+        public long deletes;
+        public long inserts;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            updates = 0;
+            deletes = 0;
+            inserts = 0;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static abstract class AbstractChurnState {
+        protected Database db;
+        private final long seed = Long.getLong("seed", 42L);
+        private final int baseDocs = Integer.getInteger("baseDocs", 100000);
+        private final long softRetention = Long.getLong("softRetention", 0L);
+        private final Field softDeleteField = new NumericDocValuesField(SOFT_DELETES, 1);
+        private final AtomicLong seq = new AtomicLong();
+        private final AtomicLong nextKey = new AtomicLong();
+        private final LongAdder added = new LongAdder();
+        private Directory dir;
+        private IndexWriter writer;
+        private Zipfian keys;
+        private Mix ops;
+        private Query[] queries;
+        private Histogram baseline;
+        private int maxDoc;
+
+        /** update/delete/insert weights. */
+        @Param({ "90/5/5", "50/40/10" })
+        String mix;
+
+        @Param({ "0.99", "0" })
+        double skew;
+
+        @Param({ "hard", "soft" })
+        String deletes;
+
+        public abstract Directory getDirectory(final Path path) throws IOException;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            dir = new MeteringDirectory(getDirectory(generateTestPath()));
+            cleanDirectory();
+            final BenchmarkCorpus corpus = BenchmarkCorpus.open(baseDocs, seed, 1000);
+            corpus.copyTo(dir);
+            writer = new IndexWriter(dir, indexWriterConfig());
+
+            keys = new Zipfian(baseDocs, skew);
+            ops = new Mix(mix);
+            nextKey.set(baseDocs + 1);
+            final List<String> terms = corpus.getSearchTerms();
+            queries = new Query[terms.size()];
+            for (int i = 0; i < queries.length; i++) {
+                queries[i] = new TermQuery(new Term("body", terms.get(i)));
+            }
+            try (final DirectoryReader reader = DirectoryReader.open(writer)) {
+                maxDoc = reader.maxDoc();
+                search(reader);
+                baseline = search(reader);
+            }
+        }
+
+        @Setup(Level.Iteration)
+        public void resetMetrics() {
+            IOMetrics.reset();
+            added.reset();
+        }
+
+        @TearDown(Level.Iteration)
+        public void report() throws Exception {
+            try (final DirectoryReader reader = DirectoryReader.open(writer)) {
+                final Histogram latency = search(reader);
+                final IOMetrics.Snapshot io = IOMetrics.snapshot();
+                System.out.println(String.format(
+                        "%d live docs of %d (%.1f%% deleted), %d segments, merges reclaimed %d docs writing %.1f MB,"
+                                + " search p50 %d us p99 %d us (baseline %d us, %d us)",
+                        reader.numDocs(), reader.maxDoc(), 100.0 * reader.numDeletedDocs() / reader.maxDoc(),
+                        reader.leaves().size(), maxDoc + added.sum() - reader.maxDoc(),
+                        io.count(Counter.MERGE_BYTES_WRITTEN) / 1048576.0,
+                        micros(latency.getValueAtPercentile(50)), micros(latency.getValueAtPercentile(99)),
+                        micros(baseline.getValueAtPercentile(50)), micros(baseline.getValueAtPercentile(99))));
+                maxDoc = reader.maxDoc();
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() throws Exception {
+            IOMetrics.reset();
+            final long start = System.nanoTime();
+            writer.forceMergeDeletes();
+            writer.commit();
+            final long elapsed = System.nanoTime() - start;
+            try (final DirectoryReader reader = DirectoryReader.open(writer)) {
+                System.out.println(String.format("forceMergeDeletes took %d ms, reclaimed %d docs writing %.1f MB",
+                        TimeUnit.NANOSECONDS.toMillis(elapsed), maxDoc - reader.maxDoc(),
+                        IOMetrics.snapshot().count(Counter.MERGE_BYTES_WRITTEN) / 1048576.0));
+            }
+            writer.close();
+            cleanDirectory();
+            dir.close();
+        }
+
+        long churn(final ChurnWorker worker, final ChurnCounters counters) throws IOException {
+            final Random random = worker.random;
+            final Field seqField = worker.seqField;
+            switch (ops.next(random)) {
+            case UPDATE: {
+                final String id = "doc-" + (1 + keys.nextScrambled(random));
+                final Document doc = worker.next(id);
+                seqField.setLongValue(seq.incrementAndGet());
+                counters.updates++;
+                added.increment();
+                if (soft()) {
+                    return writer.softUpdateDocument(new Term("_id", id), doc, softDeleteField);
+                }
+                return writer.updateDocument(new Term("_id", id), doc);
+            }
+            case DELETE: {
+                final Term id = new Term("_id", "doc-" + (1 + keys.nextScrambled(random)));
+                seq.incrementAndGet();
+                counters.deletes++;
+                if (soft()) {
+                    return writer.updateDocValues(id, softDeleteField);
+                }
+                return writer.deleteDocuments(id);
+            }
+            default: {
+                final Document doc = worker.next("doc-" + nextKey.getAndIncrement());
+                seqField.setLongValue(seq.incrementAndGet());
+                counters.inserts++;
+                added.increment();
+                return writer.addDocument(doc);
+            }
+            }
+        }
+
+        private boolean soft() {
+            return "soft".equals(deletes);
+        }
+
+        private Histogram search(final DirectoryReader reader) throws IOException {
+            final IndexSearcher searcher = new IndexSearcher(reader);
+            final Histogram result = new Histogram(3);
+            for (int i = 0; i < SEARCHES; i++) {
+                final long start = System.nanoTime();
+                searcher.search(queries[i % queries.length], 10);
+                result.recordValue(System.nanoTime() - start);
+            }
+            return result;
+        }
+
+        private IndexWriterConfig indexWriterConfig() {
+            final IndexWriterConfig config = new IndexWriterConfig();
+            config.setUseCompoundFile(false);
+            config.setCodec(new Lucene80Codec());
+            MergePolicy mergePolicy = new TieredMergePolicy();
+            if (soft()) {
+                config.setSoftDeletesField(SOFT_DELETES);
+                mergePolicy = new SoftDeletesRetentionMergePolicy(SOFT_DELETES, this::retentionQuery, mergePolicy);
+            }
+            config.setMergePolicy(mergePolicy);
+            return config;
+        }
+
+        private Query retentionQuery() {
+            if (softRetention <= 0) {
+                return new MatchNoDocsQuery();
+            }
+            return LongPoint.newRangeQuery(SEQ, seq.get() - softRetention, Long.MAX_VALUE);
+        }
+
+        private void cleanDirectory() throws IOException {
+            for (final String name : dir.listAll()) {
+                dir.deleteFile(name);
+            }
+        }
+
+        private Path generateTestPath() {
+            final String dir = System.getProperty("dir");
+            if (dir == null) {
+                throw new Error("System property 'dir' not set.");
+            }
+            final FileSystem fileSystem = FileSystems.getDefault();
+            return fileSystem.getPath(dir);
+        }
+
+        private static long micros(final long nanos) {
+            return TimeUnit.NANOSECONDS.toMicros(nanos);
+        }
+    }
+
+    /**
+     * Each thread's random choices and new revisions.
+     */
+    @State(Scope.Thread)
+    public static class ChurnWorker {
+        private final long seed = Long.getLong("seed", 42L);
+        private final LongPoint seqField = new LongPoint(SEQ, 0L);
+        private Random random;
+        private DocumentGenerator documents;
+
+        /** id, linedocs or synthetic, see DocumentGenerator. */
+        @Param({ "linedocs" })
+        String generator;
+
+        /** tiny, median, huge or mixed. */
+        @Param({ "median" })
+        String docSize;
+
+        @Setup(Level.Trial)
+        public void setup(final ThreadParams threads) throws IOException {
+            random = new Random(seed + threads.getThreadIndex());
+            documents = DocumentGenerator.create(generator, seed, DocSize.parse(docSize),
+                    threads.getThreadIndex(), threads.getThreadCount());
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() throws IOException {
+            documents.close();
+        }
+
+        /**
+         * @return the next generated document, with its _id replaced.
+         */
+        Document next(final String id) throws IOException {
+            final Document doc = documents.next();
+            ((Field) doc.getField("_id")).setStringValue(id);
+            // the generator reuses its Document, or rebuilds it from scratch
+            if (doc.getField(SEQ) == null) {
+                doc.add(seqField);
+            }
+            return doc;
+        }
+    }
+
+    enum Op {
+        UPDATE, DELETE, INSERT
+    }
+
+    /**
+     * Weighted choice of operation, configured as update/delete/insert
+     * weights, for example "90/5/5". JMH splits parameter values on commas,
+     * hence not the class:weight form of QueryWorkload.Mix.
+     */
+    static final class Mix {
+        private final int[] cumulativeWeights = new int[Op.values().length];
+
+        Mix(final String spec) {
+            final String[] weights = spec.split("/");
+            if (weights.length != cumulativeWeights.length) {
+                throw new IllegalArgumentException("Churn mix is not update/delete/insert: " + spec);
+            }
+            int total = 0;
+            for (int i = 0; i < weights.length; i++) {
+                total += Integer.parseInt(weights[i].trim());
+                cumulativeWeights[i] = total;
+            }
+            if (total <= 0) {
+                throw new IllegalArgumentException("Churn mix has no weight: " + spec);
+            }
+        }
+
+        Op next(final Random random) {
+            final int choice = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+            for (int i = 0; i < cumulativeWeights.length; i++) {
+                if (choice < cumulativeWeights[i]) {
+                    return Op.values()[i];
+                }
+            }
+            throw new AssertionError();
+        }
+    }
+
+    public static class FDBChurnState extends AbstractChurnState {
+
+        @Param({ "1000", "10000", "100000" })
+        int pageSize;
+
+        @Param({ "1", "10", "100" })
+        int pagesPerTxn;
+
+        @Override
+        public void setup() throws Exception {
+            FDB.selectAPIVersion(600);
+            db = FDB.instance().open();
+            super.setup();
+        }
+
+        @Override
+        public void teardown() throws Exception {
+            super.teardown();
+            db.close();
+        }
+
+        @Override
+        public Directory getDirectory(final Path path) throws IOException {
+            return FDBDirectory.open(db, path, pageSize, pageSize * pagesPerTxn);
+        }
+    }
+
+    public static class NIOFSChurnState extends AbstractChurnState {
+
+        @Override
+        public Directory getDirectory(final Path path) throws IOException {
+            return new NIOFSDirectory(path);
+        }
+    }
+
+    @Benchmark
+    public long churnFDB(final FDBChurnState state, final ChurnWorker worker, final ChurnCounters counters)
+            throws IOException {
+        return state.churn(worker, counters);
+    }
+
+    @Benchmark
+    public long churnNIOFS(final NIOFSChurnState state, final ChurnWorker worker, final ChurnCounters counters)
+            throws IOException {
+        return state.churn(worker, counters);
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        final Options opt = new OptionsBuilder().include(ChurnBenchmark.class.getSimpleName()).build();
+        new Runner(opt).run();
+    }
+
+}
@@ -0,0 +1,339 @@
+package com.cloudant.fdblucene.benchmark;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.codecs.DocValuesFormat;
+import org.apache.lucene.codecs.PostingsFormat;
+import org.apache.lucene.codecs.lucene50.Lucene50StoredFieldsFormat;
+import org.apache.lucene.codecs.lucene80.Lucene80Codec;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.TieredMergePolicy;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Timeout;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.apple.foundationdb.Database;
+import com.apple.foundationdb.FDB;
+import com.cloudant.fdblucene.FDBDirectory;
+import com.cloudant.fdblucene.benchmark.DocumentGenerator.DocSize;
+import com.cloudant.fdblucene.benchmark.QueryWorkload.Frequency;
+import com.cloudant.fdblucene.benchmark.QueryWorkload.QueryClass;
+import com.cloudant.fdblucene.store.IOMetrics;
+import com.cloudant.fdblucene.store.IOMetrics.Counter;
+import com.cloudant.fdblucene.store.MeteringDirectory;
+
+/**
+ * Index size, bytes written and read latency for each codec configuration.
+ *
+ * Each configuration's index of docs (system property, default 50000) line
+ * docs is built by the first trial that needs it, which prints the indexing
+ * rate, the bytes written, the size of the finished index and, for FDB, the
+ * transactions it took. The benchmarks then time TermQuery searches, the same
+ * searches loading the stored fields of the top hits, and the same searches
+ * sorted by a numeric doc values field.
+ *
+ * The indexes are kept under dir, one per configuration, so that the search,
+ * fetch and sort trials share a build; clear dir after the run, or to rebuild.
+ *
+ * postings and docValues name a format, optionally followed by per-field
+ * overrides, all separated by '/', for example "Lucene50/_id=FST50". The
+ * formats are looked up by name, so any on the classpath can be used.
+ *
+ */
+@BenchmarkMode(Mode.SampleTime)
+@Fork(1)
+@Warmup(iterations = 2, time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 30, timeUnit = TimeUnit.SECONDS)
+@Timeout(time = 15, timeUnit = TimeUnit.MINUTES)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CodecSweepBenchmark {
+
+    private static final int TOP_N = 10;
+    private static final int POOL_SIZE = 1000;
+    private static final String SPEC_KEY = "codec.spec";
+
+    @State(Scope.Benchmark)
+    public static abstract class AbstractCodecState {
+        protected Database db;
+        protected CountingDatabase counting;
+        private final long seed = Long.getLong("seed", 42L);
+        private final int docs = Integer.getInteger("docs", 50000);
+        private final Sort sort = new Sort(new SortField("ordinal", SortField.Type.LONG));
+        private Directory dir;
+        private DirectoryReader reader;
+        private IndexSearcher searcher;
+        private QueryWorkload workload;
+        private int index;
+
+        @Param({ "BEST_SPEED", "BEST_COMPRESSION" })
+        Lucene50StoredFieldsFormat.Mode storedFields;
+
+        @Param({ "false", "true" })
+        boolean compoundFile;
+
+        @Param({ "Lucene50", "Lucene50/_id=FST50" })
+        String postings;
+
+        @Param({ "Lucene80", "Direct" })
+        String docValues;
+
+        /** tiny, median, huge or mixed. */
+        @Param({ "median" })
+        String docSize;
+
+        public abstract Directory getDirectory(final Path path) throws IOException;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            dir = getDirectory(generateTestPath().resolve(spec()));
+            if (!isBuilt()) {
+                cleanDirectory();
+                build();
+            }
+            reader = DirectoryReader.open(dir);
+            searcher = new IndexSearcher(reader);
+            workload = QueryWorkload.build(reader, seed, POOL_SIZE);
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() throws Exception {
+            reader.close();
+            dir.close();
+        }
+
+        long search(final QueryClass queryClass) throws IOException {
+            final Query query = workload.query(QueryClass.TERM, Frequency.MEDIUM, index++);
+            if (queryClass == QueryClass.SORTED) {
+                return searcher.search(query, TOP_N, sort).totalHits.value;
+            }
+            return workload.execute(searcher, queryClass, query, TOP_N);
+        }
+
+        private void build() throws IOException {
+            final IndexWriterConfig config = new IndexWriterConfig();
+            config.setCodec(codec(storedFields, postings, docValues));
+            config.setUseCompoundFile(compoundFile);
+            final TieredMergePolicy mergePolicy = new TieredMergePolicy();
+            mergePolicy.setNoCFSRatio(compoundFile ? 1.0 : 0.0);
+            config.setMergePolicy(mergePolicy);
+
+            IOMetrics.reset();
+            if (counting != null) {
+                counting.reset();
+            }
+            final long start = System.nanoTime();
+            long textChars = 0;
+            try (final IndexWriter writer = new IndexWriter(new MeteringDirectory(dir), config);
+                    final DocumentGenerator documents = DocumentGenerator.create("linedocs", seed,
+                            DocSize.parse(docSize))) {
+                for (int i = 0; i < docs; i++) {
+                    final Document doc = documents.next();
+                    textChars += doc.get("body").length();
+                    writer.addDocument(doc);
+                }
+                writer.setLiveCommitData(Collections.singletonMap(SPEC_KEY, spec()).entrySet());
+                writer.commit();
+            }
+            final double seconds = (System.nanoTime() - start) / 1e9;
+            final IOMetrics.Snapshot io = IOMetrics.snapshot();
+
+            long size = 0;
+            final String[] files = dir.listAll();
+            for (final String name : files) {
+                size += dir.fileLength(name);
+            }
+            System.out.println(String.format(
+                    "indexed %d docs in %.1f s (%.0f docs/sec, %.1f MB/sec of body text),"
+                            + " wrote %.1f MB in %d calls, index is %.1f MB in %d files%s",
+                    docs, seconds, docs / seconds, textChars / seconds / 1048576.0,
+                    io.count(Counter.BYTES_WRITTEN) / 1048576.0, io.count(Counter.WRITE_CALLS),
+                    size / 1048576.0, files.length,
+                    counting == null ? ""
+                            : String.format(", %d transactions, %d retries", counting.transactions(),
+                                    counting.retries())));
+        }
+
+        /**
+         * @return the settings the index depends on, which also name its
+         *         directory.
+         */
+        private String spec() {
+            return String.format("codec-%s-%s-%s-cfs-%b-%s-%d-seed-%d", storedFields, postings, docValues,
+                    compoundFile, docSize, docs, seed).replace('/', '+');
+        }
+
+        private boolean isBuilt() throws IOException {
+            if (!DirectoryReader.indexExists(dir)) {
+                return false;
+            }
+            return spec().equals(SegmentInfos.readLatestCommit(dir).getUserData().get(SPEC_KEY));
+        }
+
+        private void cleanDirectory() throws IOException {
+            for (final String name : dir.listAll()) {
+                dir.deleteFile(name);
+            }
+        }
+
+        private Path generateTestPath() {
+            final String dir = System.getProperty("dir");
+            if (dir == null) {
+                throw new Error("System property 'dir' not set.");
+            }
+            final FileSystem fileSystem = FileSystems.getDefault();
+            return fileSystem.getPath(dir);
+        }
+    }
+
+    public static class FDBCodecState extends AbstractCodecState {
+
+        @Param({ "1000", "10000", "100000" })
+        int pageSize;
+
+        @Param({ "1", "10", "100" })
+        int pagesPerTxn;
+
+        @Override
+        public void setup() throws Exception {
+            FDB.selectAPIVersion(600);
+            db = FDB.instance().open();
+            counting = new CountingDatabase(db);
+            super.setup();
+        }
+
+        @Override
+        public void teardown() throws Exception {
+            super.teardown();
+            db.close();
+        }
+
+        @Override
+        public Directory getDirectory(final Path path) throws IOException {
+            return FDBDirectory.open(counting.database(), path.resolve(pageSize + "x" + pagesPerTxn), pageSize,
+                    pageSize * pagesPerTxn);
+        }
+    }
+
+    public static class NIOFSCodecState extends AbstractCodecState {
+
+        @Override
+        public Directory getDirectory(final Path path) throws IOException {
+            return new NIOFSDirectory(path);
+        }
+    }
+
+    /**
+     * A Lucene80Codec with the given stored fields mode and postings and doc
+     * values formats, each a default name followed by any field=name overrides
+     * separated by '/'.
+     */
+    static Codec codec(final Lucene50StoredFieldsFormat.Mode storedFields, final String postings, final String docValues) {
+        final Map<String, PostingsFormat> postingsFormats = new HashMap<>();
+        for (final Map.Entry<String, String> entry : formats(postings).entrySet()) {
+            postingsFormats.put(entry.getKey(), PostingsFormat.forName(entry.getValue()));
+        }
+        final Map<String, DocValuesFormat> docValuesFormats = new HashMap<>();
+        for (final Map.Entry<String, String> entry : formats(docValues).entrySet()) {
+            docValuesFormats.put(entry.getKey(), DocValuesFormat.forName(entry.getValue()));
+        }
+        return new Lucene80Codec(storedFields) {
+            @Override
+            public PostingsFormat getPostingsFormatForField(final String field) {
+                final PostingsFormat result = postingsFormats.get(field);
+                return result == null ? postingsFormats.get("") : result;
+            }
+
+            @Override
+            public DocValuesFormat getDocValuesFormatForField(final String field) {
+                final DocValuesFormat result = docValuesFormats.get(field);
+                return result == null ? docValuesFormats.get("") : result;
+            }
+        };
+    }
+
+    /**
+     * @return format names by field, the default under "".
+     */
+    private static Map<String, String> formats(final String spec) {
+        final Map<String, String> result = new HashMap<>();
+        final String[] entries = spec.split("/");
+        result.put("", entries[0].trim());
+        for (int i = 1; i < entries.length; i++) {
+            final String[] entry = entries[i].split("=");
+            if (entry.length != 2) {
+                throw new IllegalArgumentException("Bad format override " + entries[i] + " in " + spec);
+            }
+            result.put(entry[0].trim(), entry[1].trim());
+        }
+        return result;
+    }
+
+    @Benchmark
+    public long searchFDB(final FDBCodecState state) throws IOException {
+        return state.search(QueryClass.TERM);
+    }
+
+    @Benchmark
+    public long fetchFDB(final FDBCodecState state) throws IOException {
+        return state.search(QueryClass.STORED);
+    }
+
+    @Benchmark
+    public long sortFDB(final FDBCodecState state) throws IOException {
+        return state.search(QueryClass.SORTED);
+    }
+
+    @Benchmark
+    public long searchNIOFS(final NIOFSCodecState state) throws IOException {
+        return state.search(QueryClass.TERM);
+    }
+
+    @Benchmark
+    public long fetchNIOFS(final NIOFSCodecState state) throws IOException {
+        return state.search(QueryClass.STORED);
+    }
+
+    @Benchmark
+    public long sortNIOFS(final NIOFSCodecState state) throws IOException {
+        return state.search(QueryClass.SORTED);
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        final Options opt = new OptionsBuilder().include(CodecSweepBenchmark.class.getSimpleName()).build();
+        new Runner(opt).run();
+    }
+
+}
@@ -0,0 +1,281 @@
+package com.cloudant.fdblucene.benchmark;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.codecs.lucene80.Lucene80Codec;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LogByteSizeMergePolicy;
+import org.apache.lucene.index.MergePolicy;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.SerialMergeScheduler;
+import org.apache.lucene.index.TieredMergePolicy;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.apache.lucene.util.LineFileDocs;
+import org.apache.lucene.util.LuceneTestCase;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Timeout;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.apple.foundationdb.Database;
+import com.apple.foundationdb.FDB;
+import com.cloudant.fdblucene.FDBDirectory;
+import com.cloudant.fdblucene.store.IOMetrics;
+
+/**
+ * Time the index maintenance that IndexingBenchmark folds into its
+ * throughput, one operation per iteration. The workload parameter picks it:
+ *
+ * <ul>
+ * <li>commit-N: commit N buffered documents.</li>
+ * <li>flush-N: flush N buffered documents to a segment without
+ * committing.</li>
+ * <li>forceMerge-S: merge the corpus from S segments down to one.</li>
+ * <li>tiered-T-M: index policyDocs documents, flushing every 500, under a
+ * TieredMergePolicy with T segments per tier and M MB maximum merged segment,
+ * running merges inline.</li>
+ * <li>log-F: the same under a LogByteSizeMergePolicy with merge factor F.</li>
+ * </ul>
+ *
+ * Segment counts before and after are printed after each iteration.
+ * policyDocs is a system property, default 20000.
+ *
+ * The times are of the plain directory. Bytes written, and how many of them
+ * were rewritten by merges, are metered only in a separate run with
+ * -prof com.cloudant.fdblucene.benchmark.IOMeterProfiler, or main with the
+ * meter system property set to true, as metering every write slows it down.
+ * They are reported as the io.bytes_written/op and io.merge_bytes_written/op
+ * secondary results, per timed operation.
+ *
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Timeout(time = 15, timeUnit = TimeUnit.MINUTES)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CommitMergeBenchmark {
+
+    private static final int FLUSH_EVERY = 500;
+
+    @State(Scope.Benchmark)
+    public static abstract class AbstractCostState {
+
+        @Param({ "commit-100", "commit-10000", "flush-100", "flush-10000", "forceMerge-5", "forceMerge-50",
+                "tiered-10-5120", "tiered-4-5120", "tiered-10-16", "log-10" })
+        public String workload;
+
+        protected Database db;
+        private final long seed = Long.getLong("seed", 42L);
+        private final int policyDocs = Integer.getInteger("policyDocs", 20000);
+        private String operation;
+        private int argument;
+        private Directory dir;
+        private IndexWriter writer;
+        private LineFileDocs lineFileDocs;
+        private StringField idField;
+        private int segmentsBefore;
+        private long docCount;
+
+        public abstract Directory getDirectory(final Path path) throws IOException;
+
+        @Setup(Level.Iteration)
+        public void setup() throws Exception {
+            final String[] parts = workload.split("-");
+            operation = parts[0];
+            argument = Integer.parseInt(parts[1]);
+            dir = IOMetrics.wrap(getDirectory(generateTestPath()));
+            cleanDirectory();
+            lineFileDocs = new LineFileDocs(new Random(seed), LuceneTestCase.DEFAULT_LINE_DOCS_FILE);
+            idField = new StringField("_id", "", Store.YES);
+            docCount = 0;
+
+            final IndexWriterConfig config = indexWriterConfig();
+            switch (operation) {
+            case "commit":
+            case "flush":
+                config.setMergePolicy(NoMergePolicy.INSTANCE);
+                config.setRAMBufferSizeMB(1024);
+                writer = new IndexWriter(dir, config);
+                addDocuments(argument);
+                break;
+            case "forceMerge":
+                BenchmarkCorpus.open(100000, seed, 1000).copyTo(dir, argument);
+                writer = new IndexWriter(dir, config);
+                break;
+            case "tiered":
+            case "log":
+                config.setMergePolicy(mergePolicy(parts));
+                config.setMergeScheduler(new SerialMergeScheduler());
+                config.setMaxBufferedDocs(FLUSH_EVERY);
+                config.setRAMBufferSizeMB(IndexWriterConfig.DISABLE_AUTO_FLUSH);
+                writer = new IndexWriter(dir, config);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown workload " + workload);
+            }
+            // an NRT reader would flush the buffered documents, so count the
+            // segments of the last commit
+            segmentsBefore = DirectoryReader.indexExists(dir) ? SegmentInfos.readLatestCommit(dir).size() : 0;
+            // leave the preparation out of the profiler's counts
+            IOMetrics.reset();
+        }
+
+        @TearDown(Level.Iteration)
+        public void teardown() throws Exception {
+            System.out.println(String.format("segments %d -> %d", segmentsBefore, segmentCount()));
+            writer.rollback();
+            lineFileDocs.close();
+            cleanDirectory();
+            dir.close();
+        }
+
+        public long run() throws IOException {
+            switch (operation) {
+            case "commit":
+                return writer.commit();
+            case "flush":
+                writer.flush();
+                return writer.numRamDocs();
+            case "forceMerge":
+                writer.forceMerge(1);
+                return writer.commit();
+            default:
+                addDocuments(policyDocs);
+                return writer.commit();
+            }
+        }
+
+        private void addDocuments(final int count) throws IOException {
+            for (int i = 0; i < count; i++) {
+                // LineFileDocs hands back the same Document each time
+                final Document doc = lineFileDocs.nextDoc();
+                if (doc.getField("_id") == null) {
+                    doc.add(idField);
+                }
+                idField.setStringValue("doc-" + docCount++);
+                writer.addDocument(doc);
+            }
+        }
+
+        private int segmentCount() throws IOException {
+            try (final DirectoryReader reader = DirectoryReader.open(writer)) {
+                return reader.leaves().size();
+            }
+        }
+
+        private static MergePolicy mergePolicy(final String[] parts) {
+            if ("log".equals(parts[0])) {
+                final LogByteSizeMergePolicy result = new LogByteSizeMergePolicy();
+                result.setMergeFactor(Integer.parseInt(parts[1]));
+                return result;
+            }
+            final TieredMergePolicy result = new TieredMergePolicy();
+            result.setSegmentsPerTier(Integer.parseInt(parts[1]));
+            result.setMaxMergedSegmentMB(Double.parseDouble(parts[2]));
+            return result;
+        }
+
+        private void cleanDirectory() throws IOException {
+            for (final String name : dir.listAll()) {
+                dir.deleteFile(name);
+            }
+        }
+
+        private Path generateTestPath() {
+            final String dir = System.getProperty("dir");
+            if (dir == null) {
+                throw new Error("System property 'dir' not set.");
+            }
+            final FileSystem fileSystem = FileSystems.getDefault();
+            return fileSystem.getPath(dir);
+        }
+
+        private IndexWriterConfig indexWriterConfig() {
+            final IndexWriterConfig config = new IndexWriterConfig();
+            config.setUseCompoundFile(false);
+            config.setCodec(new Lucene80Codec());
+            return config;
+        }
+    }
+
+    public static class FDBCostState extends AbstractCostState {
+
+        @Param({ "1000", "10000", "100000" })
+        int pageSize;
+
+        @Param({ "1", "10", "100" })
+        int pagesPerTxn;
+
+        @Setup(Level.Trial)
+        public void startFDBNetworking() {
+            FDB.selectAPIVersion(600);
+            db = FDB.instance().open();
+        }
+
+        @TearDown(Level.Trial)
+        public void closeFDB() {
+            db.close();
+        }
+
+        @Override
+        public Directory getDirectory(final Path path) throws IOException {
+            return FDBDirectory.open(db, path, pageSize, pageSize * pagesPerTxn);
+        }
+    }
+
+    public static class NIOFSCostState extends AbstractCostState {
+
+        @Override
+        public Directory getDirectory(final Path path) throws IOException {
+            return new NIOFSDirectory(path);
+        }
+    }
+
+    @Benchmark
+    public long costFDB(final FDBCostState state) throws Exception {
+        return state.run();
+    }
+
+    @Benchmark
+    public long costNIOFS(final NIOFSCostState state) throws Exception {
+        return state.run();
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        final OptionsBuilder builder = new OptionsBuilder();
+        builder.include(CommitMergeBenchmark.class.getSimpleName());
+        if (Boolean.getBoolean("meter")) {
+            builder.addProfiler(IOMeterProfiler.class);
+        }
+        final Options opt = builder.build();
+        new Runner(opt).run();
+    }
+
+}
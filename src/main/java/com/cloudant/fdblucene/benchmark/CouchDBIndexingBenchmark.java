@@ -0,0 +1,221 @@
+package com.cloudant.fdblucene.benchmark;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.codecs.lucene80.Lucene80Codec;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Timeout;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.apple.foundationdb.Database;
+import com.apple.foundationdb.FDB;
+import com.cloudant.fdblucene.FDBDirectory;
+import com.cloudant.fdblucene.couchdb.ChangesSource;
+import com.cloudant.fdblucene.couchdb.CouchDBIndexer;
+import com.cloudant.fdblucene.couchdb.FileChangesSource;
+import com.cloudant.fdblucene.couchdb.HttpChangesSource;
+import com.cloudant.fdblucene.couchdb.LocalCouchServer;
+import com.cloudant.fdblucene.couchdb.SyntheticDocs;
+
+/**
+ * End-to-end CouchDBIndexer ingestion of a recorded _changes response. Set the
+ * changes system property to replay a real recording, otherwise a synthetic
+ * one is generated. The docs and bytes counters give docs/sec and bytes/sec,
+ * the bytes as sent over HTTP, gzip encoded if gzip is true.
+ *
+ * source alldocs instead fetches a synthetic database's _all_docs in
+ * partitions ranges at once.
+ *
+ */
+public class CouchDBIndexingBenchmark {
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class IngestCounters {
+        public long docs;
+        public long bytes;
+    }
+
+    @BenchmarkMode(Mode.Throughput)
+    @Fork(1)
+    @State(Scope.Benchmark)
+    @Warmup(iterations = 1, time = 30, timeUnit = TimeUnit.SECONDS)
+    @Measurement(iterations = 3, time = 2, timeUnit = TimeUnit.MINUTES)
+    @Timeout(time = 30, timeUnit = TimeUnit.MINUTES)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public static abstract class AbstractCouchDBIndexingBenchmark {
+        protected Database db;
+        private Directory dir;
+        private IndexWriter writer;
+        private Path changes;
+        private long changesBytes;
+        private LocalCouchServer server;
+        private final CouchDBIndexer indexer = new CouchDBIndexer();
+
+        @Param({ "file", "http", "alldocs" })
+        private String source;
+
+        @Param({ "10000" })
+        private int syntheticDocs;
+
+        @Param({ "4" })
+        private int partitions;
+
+        @Param({ "true" })
+        private boolean gzip;
+
+        public abstract Directory getDirectory(final Path path) throws IOException;
+
+        @Benchmark
+        public long ingest(final IngestCounters counters) throws Exception {
+            final long docs;
+            final long bytesBefore = server == null ? 0 : server.bytesSent();
+            if ("alldocs".equals(source)) {
+                try (final HttpChangesSource allDocsSource = new HttpChangesSource(server.databaseUrl("bench"),
+                        null, null, partitions)) {
+                    docs = indexer.indexAllDocs(allDocsSource, writer, partitions);
+                }
+            } else {
+                try (final ChangesSource changesSource = openSource()) {
+                    docs = indexer.index(changesSource, writer);
+                }
+            }
+            counters.docs += docs;
+            counters.bytes += server == null ? changesBytes : server.bytesSent() - bytesBefore;
+            return docs;
+        }
+
+        @Setup(Level.Trial)
+        public void setupChanges() throws Exception {
+            final String recorded = System.getProperty("changes");
+            if (recorded == null) {
+                changes = Files.createTempFile("changes", ".json");
+                SyntheticDocs.writeChanges(changes, syntheticDocs, 42L);
+            } else {
+                changes = FileSystems.getDefault().getPath(recorded);
+            }
+            changesBytes = Files.size(changes);
+            if ("http".equals(source)) {
+                server = new LocalCouchServer(changes);
+            } else if ("alldocs".equals(source)) {
+                server = new LocalCouchServer(syntheticDocs, 42L);
+            }
+            if (server != null) {
+                server.setGzip(gzip);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void teardownChanges() throws Exception {
+            if (server != null) {
+                server.close();
+            }
+            if (System.getProperty("changes") == null) {
+                Files.delete(changes);
+            }
+        }
+
+        @Setup(Level.Invocation)
+        public void setup() throws Exception {
+            dir = getDirectory(generateTestPath());
+            cleanDirectory();
+            writer = new IndexWriter(dir, indexWriterConfig());
+        }
+
+        @TearDown(Level.Invocation)
+        public void teardown() throws Exception {
+            writer.close();
+            cleanDirectory();
+            dir.close();
+        }
+
+        private ChangesSource openSource() {
+            if (server != null) {
+                return new HttpChangesSource(server.databaseUrl("bench"), null, null);
+            }
+            return new FileChangesSource(changes);
+        }
+
+        private void cleanDirectory() throws IOException {
+            for (final String name : dir.listAll()) {
+                dir.deleteFile(name);
+            }
+        }
+
+        private Path generateTestPath() {
+            final String dir = System.getProperty("dir");
+            if (dir == null) {
+                throw new Error("System property 'dir' not set.");
+            }
+            final FileSystem fileSystem = FileSystems.getDefault();
+            return fileSystem.getPath(dir);
+        }
+
+        private IndexWriterConfig indexWriterConfig() {
+            final IndexWriterConfig config = new IndexWriterConfig();
+            config.setUseCompoundFile(false);
+            config.setCodec(new Lucene80Codec());
+            return config;
+        }
+    }
+
+    public static class FDBCouchDBIndexingBenchmark extends AbstractCouchDBIndexingBenchmark {
+
+        @Setup(Level.Trial)
+        public void startFDBNetworking() {
+            FDB.selectAPIVersion(600);
+            db = FDB.instance().open();
+        }
+
+        @TearDown(Level.Trial)
+        public void closeFDB() {
+            db.close();
+        }
+
+        @Override
+        public Directory getDirectory(final Path path) throws IOException {
+            return FDBDirectory.open(db, path);
+        }
+
+    }
+
+    public static class NIOFSCouchDBIndexingBenchmark extends AbstractCouchDBIndexingBenchmark {
+
+        @Override
+        public Directory getDirectory(final Path path) throws IOException {
+            return new NIOFSDirectory(path);
+        }
+
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        final Options opt = new OptionsBuilder().include(CouchDBIndexingBenchmark.class.getSimpleName()).build();
+        new Runner(opt).run();
+    }
+
+}
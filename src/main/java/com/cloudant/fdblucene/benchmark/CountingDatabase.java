@@ -0,0 +1,86 @@
+package com.cloudant.fdblucene.benchmark;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import com.apple.foundationdb.Database;
+
+/**
+ * A Database proxy that counts the transactions run through it, for code
+ * such as FDBDirectory that wants a Database rather than a
+ * TransactionContext. As with CountingTransactionContext, every attempt after
+ * the first is a retry. Transactions from createTransaction are counted once,
+ * whatever the caller does with them.
+ *
+ */
+public final class CountingDatabase implements InvocationHandler {
+
+    private final Database db;
+    private final Database proxy;
+    private final LongAdder transactions = new LongAdder();
+    private final LongAdder attempts = new LongAdder();
+
+    public CountingDatabase(final Database db) {
+        this.db = db;
+        this.proxy = (Database) Proxy.newProxyInstance(Database.class.getClassLoader(),
+                new Class<?>[] { Database.class }, this);
+    }
+
+    /**
+     * @return the counting Database.
+     */
+    public Database database() {
+        return proxy;
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+        switch (method.getName()) {
+        case "run":
+        case "runAsync":
+        case "read":
+        case "readAsync":
+            transactions.increment();
+            args[0] = countAttempts((Function<?, ?>) args[0]);
+            break;
+        case "createTransaction":
+            transactions.increment();
+            attempts.increment();
+            break;
+        default:
+            break;
+        }
+        try {
+            return method.invoke(db, args);
+        } catch (final InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    public long transactions() {
+        return transactions.sum();
+    }
+
+    public long retries() {
+        return attempts.sum() - transactions.sum();
+    }
+
+    public void reset() {
+        transactions.reset();
+        attempts.reset();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T, R> Function<T, R> countAttempts(final Function<?, ?> retryable) {
+        final Function<T, R> delegate = (Function<T, R>) retryable;
+        return txn -> {
+            attempts.increment();
+            return delegate.apply(txn);
+        };
+    }
+
+}
@@ -0,0 +1,77 @@
+package com.cloudant.fdblucene.benchmark;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import com.apple.foundationdb.Database;
+import com.apple.foundationdb.ReadTransaction;
+import com.apple.foundationdb.Transaction;
+import com.apple.foundationdb.TransactionContext;
+
+/**
+ * Runs transactions on a Database, counting how many were asked for and how
+ * many attempts it took to commit them. Every attempt after the first is a
+ * retry, usually after a conflict.
+ *
+ */
+public final class CountingTransactionContext implements TransactionContext {
+
+    private final Database db;
+    private final LongAdder transactions = new LongAdder();
+    private final LongAdder attempts = new LongAdder();
+
+    public CountingTransactionContext(final Database db) {
+        this.db = db;
+    }
+
+    @Override
+    public <T> T run(final Function<? super Transaction, T> retryable) {
+        transactions.increment();
+        return db.run(txn -> {
+            attempts.increment();
+            return retryable.apply(txn);
+        });
+    }
+
+    @Override
+    public <T> CompletableFuture<T> runAsync(
+            final Function<? super Transaction, ? extends CompletableFuture<T>> retryable) {
+        transactions.increment();
+        return db.runAsync(txn -> {
+            attempts.increment();
+            return retryable.apply(txn);
+        });
+    }
+
+    @Override
+    public <T> T read(final Function<? super ReadTransaction, T> retryable) {
+        return db.read(retryable);
+    }
+
+    @Override
+    public <T> CompletableFuture<T> readAsync(
+            final Function<? super ReadTransaction, ? extends CompletableFuture<T>> retryable) {
+        return db.readAsync(retryable);
+    }
+
+    @Override
+    public Executor getExecutor() {
+        return db.getExecutor();
+    }
+
+    public long transactions() {
+        return transactions.sum();
+    }
+
+    public long retries() {
+        return attempts.sum() - transactions.sum();
+    }
+
+    public void reset() {
+        transactions.reset();
+        attempts.reset();
+    }
+
+}
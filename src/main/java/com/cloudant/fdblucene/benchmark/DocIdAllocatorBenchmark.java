@@ -1,7 +1,14 @@
 package com.cloudant.fdblucene.benchmark;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
+import org.openjdk.jmh.annotations.AuxCounters;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.BenchmarkMode;
 import org.openjdk.jmh.annotations.Fork;
@@ -13,7 +20,11 @@ import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
 import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
 import org.openjdk.jmh.runner.Runner;
 import org.openjdk.jmh.runner.RunnerException;
 import org.openjdk.jmh.runner.options.Options;
@@ -24,6 +35,23 @@ import com.apple.foundationdb.FDB;
 import com.apple.foundationdb.subspace.Subspace;
 import com.cloudant.fdblucene.DocIDAllocator;
 
+/**
+ * Doc ID allocation throughput under contention. Run with -t to allocate
+ * from several threads, or through main, which repeats the suite for each
+ * count in the threads system property (default 1, 2, 4, 8, 16).
+ *
+ * The contenders system property starts that many extra JVMs allocating from
+ * the same subspace for the whole trial, each with contenderThreads threads
+ * (default 1), to model several indexer processes. The subspace is cleared
+ * once, before they start.
+ *
+ * allocatorType=leased hands out IDs from blocks of leaseSize (system property,
+ * default 10000) leased through the same DocIDAllocator. The transactions and
+ * retries counters give the transactions per second this JVM ran and the
+ * retries per second they took, usually after conflicting with another
+ * allocation.
+ *
+ */
 @BenchmarkMode(Mode.Throughput)
 @Fork(1)
 @State(Scope.Benchmark)
@@ -32,32 +60,170 @@ import com.cloudant.fdblucene.DocIDAllocator;
 @OutputTimeUnit(TimeUnit.SECONDS)
 public class DocIdAllocatorBenchmark {
 
+    private static final Subspace INDEX = new Subspace(new byte[] { 4, 5, 6 });
+
     private Database db;
+    private CountingTransactionContext txc;
     private DocIDAllocator allocator;
+    private LeasedDocIDAllocator leasedAllocator;
+    private final List<Process> contenders = new ArrayList<>();
 
     @Param({ "1", "10", "100", "1000" })
     private int allocationCount;
 
-    @Setup(Level.Iteration)
-    public void setup() throws Exception {
+    @Param({ "transactional", "leased" })
+    private String allocatorType;
+
+    /**
+     * The transactions and retries of the iteration, reported by the first
+     * thread once every thread has stopped allocating.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class TransactionCounters {
+        public long transactions;
+        public long retries;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            transactions = 0;
+            retries = 0;
+        }
+
+        @TearDown(Level.Iteration)
+        public void collect(final DocIdAllocatorBenchmark benchmark, final ThreadParams threads) {
+            if (threads.getThreadIndex() == 0) {
+                transactions = benchmark.txc.transactions();
+                retries = benchmark.txc.retries();
+            }
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void openDatabase() throws Exception {
         FDB.selectAPIVersion(600);
         this.db = FDB.instance().open();
-        final Subspace index = new Subspace(new byte[] { 4, 5, 6 });
         db.run(txn -> {
-            txn.clear(index.range());
+            txn.clear(INDEX.range());
             return null;
         });
-        this.allocator = new DocIDAllocator(index);
+        // not a @Setup of its own, as the contenders must start after the clear
+        startContenders();
+    }
+
+    @TearDown(Level.Trial)
+    public void closeDatabase() {
+        db.close();
+    }
+
+    private void startContenders() throws Exception {
+        final int count = Integer.getInteger("contenders", 0);
+        final String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        for (int i = 0; i < count; i++) {
+            final ProcessBuilder builder = new ProcessBuilder(java,
+                    "-cp", System.getProperty("java.class.path"),
+                    Contender.class.getName(),
+                    Integer.toString(Integer.getInteger("contenderThreads", 1)),
+                    Integer.toString(allocationCount));
+            builder.inheritIO();
+            contenders.add(builder.start());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stopContenders() throws InterruptedException {
+        for (final Process contender : contenders) {
+            contender.destroy();
+        }
+        for (final Process contender : contenders) {
+            contender.waitFor();
+        }
+        contenders.clear();
+    }
+
+    @Setup(Level.Iteration)
+    public void setup() throws Exception {
+        this.txc = new CountingTransactionContext(db);
+        this.allocator = new DocIDAllocator(INDEX);
+        this.leasedAllocator = new LeasedDocIDAllocator(allocator, txc, Integer.getInteger("leaseSize", 10000));
     }
 
     @Benchmark
-    public int[] allocate() {
-        return allocator.allocate(db, allocationCount);
+    public int[] allocate(final TransactionCounters counters) {
+        if ("leased".equals(allocatorType)) {
+            return leasedAllocator.allocate(allocationCount);
+        }
+        return allocator.allocate(txc, allocationCount);
+    }
+
+    /**
+     * Allocates from the benchmark subspace until killed.
+     */
+    public static final class Contender {
+        public static void main(final String[] args) {
+            final int threads = Integer.parseInt(args[0]);
+            final int allocationCount = Integer.parseInt(args[1]);
+            FDB.selectAPIVersion(600);
+            final Database db = FDB.instance().open();
+            final DocIDAllocator allocator = new DocIDAllocator(INDEX);
+            for (int i = 0; i < threads; i++) {
+                final Thread thread = new Thread(() -> {
+                    while (true) {
+                        allocator.allocate(db, allocationCount);
+                    }
+                }, "contender-" + i);
+                thread.start();
+            }
+        }
     }
 
     public static void main(final String[] args) throws RunnerException {
-        final Options opt = new OptionsBuilder().include(DocIdAllocatorBenchmark.class.getSimpleName()).build();
-        new Runner(opt).run();
+        final List<Integer> threadCounts = new ArrayList<>();
+        for (final String count : System.getProperty("threads", "1,2,4,8,16").split(",")) {
+            threadCounts.add(Integer.parseInt(count.trim()));
+        }
+        final Map<String, List<String>> table = new LinkedHashMap<>();
+        final Map<String, List<String>> transactionsTable = new LinkedHashMap<>();
+        final Map<String, List<String>> retriesTable = new LinkedHashMap<>();
+        for (final int threads : threadCounts) {
+            final Options opt = new OptionsBuilder()
+                    .include(DocIdAllocatorBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build();
+            final Collection<RunResult> results = new Runner(opt).run();
+            for (final RunResult result : results) {
+                final String key = String.format("%-14s %6s", result.getParams().getParam("allocatorType"),
+                        result.getParams().getParam("allocationCount"));
+                table.computeIfAbsent(key, k -> new ArrayList<>())
+                        .add(String.format("%12.1f", result.getPrimaryResult().getScore()));
+                transactionsTable.computeIfAbsent(key, k -> new ArrayList<>())
+                        .add(String.format("%12.1f", score(result, "transactions")));
+                retriesTable.computeIfAbsent(key, k -> new ArrayList<>())
+                        .add(String.format("%12.2f", score(result, "retries")));
+            }
+        }
+        print("allocations/sec", threadCounts, table);
+        print("transactions/sec", threadCounts, transactionsTable);
+        print("retries/sec", threadCounts, retriesTable);
+    }
+
+    private static double score(final RunResult result, final String label) {
+        final Result<?> secondary = result.getSecondaryResults().get(label);
+        return secondary.getScore();
+    }
+
+    private static void print(final String title, final List<Integer> threadCounts,
+            final Map<String, List<String>> table) {
+        System.out.println();
+        System.out.println(title);
+        final StringBuilder header = new StringBuilder(String.format("%-14s %6s", "allocator", "count"));
+        for (final int threads : threadCounts) {
+            header.append(String.format("%12s", threads + " threads"));
+        }
+        System.out.println(header);
+        for (final Map.Entry<String, List<String>> row : table.entrySet()) {
+            System.out.println(row.getKey() + String.join("", row.getValue()));
+        }
     }
 
 }
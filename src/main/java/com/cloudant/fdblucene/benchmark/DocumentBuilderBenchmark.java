@@ -0,0 +1,234 @@
+package com.cloudant.fdblucene.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.DoublePoint;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.cloudant.fdblucene.couchdb.DocumentBuilder;
+import com.cloudant.fdblucene.couchdb.SyntheticDocs;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+
+/**
+ * Cost of turning the JSON text of CouchDB documents into Lucene documents,
+ * run with the GC profiler to get bytes allocated per doc. Every path starts
+ * from the same UTF-8 bytes. The baseline is the original indexer's
+ * allocate-everything mapping straight off a JsonReader, tree parses into a
+ * gson tree and builds from that, and builder streams from a JsonReader into
+ * a reused DocumentBuilder, as the indexing pipeline does.
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 30, timeUnit = TimeUnit.SECONDS)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DocumentBuilderBenchmark {
+
+    private static final int DOC_COUNT = 1024;
+
+    @Param({ "synthetic", "flat", "nested", "arrays" })
+    private String shape;
+
+    private byte[][] docs;
+    private int next;
+    private DocumentBuilder builder;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final Random random = new Random(42L);
+        final SyntheticDocs synthetic = new SyntheticDocs(42L);
+        docs = new byte[DOC_COUNT][];
+        for (int i = 0; i < docs.length; i++) {
+            final JsonObject doc;
+            switch (shape) {
+            case "synthetic":
+                doc = synthetic.next();
+                break;
+            case "flat":
+                doc = flat(random, 50);
+                break;
+            case "nested":
+                doc = nested(random, 5, 3);
+                break;
+            case "arrays":
+                doc = arrays(random, 20);
+                break;
+            default:
+                throw new IllegalArgumentException(shape);
+            }
+            docs[i] = doc.toString().getBytes(StandardCharsets.UTF_8);
+        }
+        builder = new DocumentBuilder();
+    }
+
+    @Benchmark
+    public Document baseline() throws IOException {
+        final Document result = new Document();
+        try (final JsonReader reader = nextDoc()) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                buildDocument(null, reader, result);
+            }
+            reader.endObject();
+        }
+        return result;
+    }
+
+    @Benchmark
+    public Document tree() throws IOException {
+        try (final JsonReader reader = nextDoc()) {
+            return builder.build(new JsonParser().parse(reader).getAsJsonObject());
+        }
+    }
+
+    @Benchmark
+    public Document builder() throws IOException {
+        try (final JsonReader reader = nextDoc()) {
+            return builder.build(reader);
+        }
+    }
+
+    private JsonReader nextDoc() {
+        final byte[] doc = docs[next++ & (DOC_COUNT - 1)];
+        return new JsonReader(new InputStreamReader(new ByteArrayInputStream(doc), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The original CouchDBIndexer mapping.
+     */
+    private static void buildDocument(final String prefix, final JsonReader in, final Document out)
+            throws IOException {
+        switch (in.peek()) {
+        case STRING:
+            if (prefix.startsWith("_")) {
+                out.add(new StringField(prefix, in.nextString(), Store.YES));
+            } else {
+                out.add(new TextField(prefix, in.nextString(), Store.YES));
+            }
+            break;
+        case BOOLEAN:
+            out.add(new StringField(prefix, Boolean.toString(in.nextBoolean()), Store.YES));
+            break;
+        case NUMBER:
+            out.add(new DoublePoint(prefix, in.nextDouble()));
+            break;
+        case BEGIN_OBJECT:
+            in.beginObject();
+            while (in.hasNext()) {
+                buildDocument(prefix, in, out);
+            }
+            in.endObject();
+            break;
+        case BEGIN_ARRAY:
+            in.beginArray();
+            while (in.hasNext()) {
+                buildDocument(prefix, in, out);
+            }
+            in.endArray();
+            break;
+        case NAME:
+            final String name = in.nextName();
+            buildDocument(prefix == null ? name : String.format("%s.%s", prefix, name), in, out);
+            break;
+        default:
+            in.skipValue();
+            break;
+        }
+    }
+
+    private static JsonObject flat(final Random random, final int fields) {
+        final JsonObject result = new JsonObject();
+        result.addProperty("_id", Long.toHexString(random.nextLong()));
+        for (int i = 0; i < fields; i++) {
+            addValue(result, "field" + i, random);
+        }
+        return result;
+    }
+
+    private static JsonObject nested(final Random random, final int depth, final int width) {
+        final JsonObject result = new JsonObject();
+        if (depth == 5) {
+            result.addProperty("_id", Long.toHexString(random.nextLong()));
+        }
+        for (int i = 0; i < width; i++) {
+            addValue(result, "value" + i, random);
+            if (depth > 1) {
+                result.add("child" + i, nested(random, depth - 1, width));
+            }
+        }
+        return result;
+    }
+
+    private static JsonObject arrays(final Random random, final int length) {
+        final JsonObject result = new JsonObject();
+        result.addProperty("_id", Long.toHexString(random.nextLong()));
+        final JsonArray items = new JsonArray();
+        for (int i = 0; i < length; i++) {
+            final JsonObject item = new JsonObject();
+            addValue(item, "name", random);
+            addValue(item, "quantity", random);
+            addValue(item, "price", random);
+            items.add(item);
+        }
+        result.add("items", items);
+        final JsonArray tags = new JsonArray();
+        for (int i = 0; i < length; i++) {
+            tags.add("tag" + random.nextInt(100));
+        }
+        result.add("tags", tags);
+        return result;
+    }
+
+    private static void addValue(final JsonObject out, final String name, final Random random) {
+        switch (random.nextInt(3)) {
+        case 0:
+            out.addProperty(name, "text " + random.nextInt(1000) + " value " + random.nextInt(1000));
+            break;
+        case 1:
+            out.addProperty(name, random.nextDouble());
+            break;
+        default:
+            out.addProperty(name, random.nextBoolean());
+            break;
+        }
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        final Options opt = new OptionsBuilder()
+                .include(DocumentBuilderBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(opt).run();
+    }
+
+}
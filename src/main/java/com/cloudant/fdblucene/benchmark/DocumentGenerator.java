@@ -0,0 +1,232 @@
+package com.cloudant.fdblucene.benchmark;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.util.BytesRef;
+
+import com.cloudant.fdblucene.couchdb.SyntheticDocs;
+
+/**
+ * A seeded stream of documents to index, generated as they are asked for
+ * rather than held in memory.
+ *
+ * The document at a given ordinal depends only on the generator type, seed,
+ * size and the ordinal itself, so a generator started at ordinal n produces
+ * the same documents a generator started at 0 would from its nth onwards.
+ * Generators reuse the Document instances they hand back and are not thread
+ * safe; give each indexing thread its own, with interleaved ordinals if they
+ * must not overlap.
+ *
+ * The types are:
+ *
+ * <ul>
+ * <li>id: a single _id field.</li>
+ * <li>linedocs: title, date and body text from Lucene's line docs file, or the
+ * file named by the lineDocs system property.</li>
+ * <li>synthetic: CouchDB-shaped JSON from SyntheticDocs, mapped onto fields by
+ * DocumentBuilder as the CouchDB indexer does.</li>
+ * </ul>
+ *
+ */
+public abstract class DocumentGenerator implements Closeable {
+
+    /**
+     * The size of the text in each generated document.
+     */
+    public enum DocSize {
+        /** 32 to 256 characters. */
+        TINY,
+        /** Whatever length the source gives. */
+        MEDIAN,
+        /** 32 to 128 KB. */
+        HUGE,
+        /** 70% tiny, 25% median and 5% huge. */
+        MIXED;
+
+        /**
+         * @return the number of characters of text to generate, or -1 for the
+         *         source's own length.
+         */
+        int targetChars(final Random random) {
+            switch (this) {
+            case TINY:
+                return 32 + random.nextInt(225);
+            case HUGE:
+                return 32768 + random.nextInt(98305);
+            case MIXED:
+                final int bucket = random.nextInt(100);
+                if (bucket < 70) {
+                    return TINY.targetChars(random);
+                }
+                return bucket < 95 ? -1 : HUGE.targetChars(random);
+            default:
+                return -1;
+            }
+        }
+
+        public static DocSize parse(final String name) {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        }
+    }
+
+    private static final byte[] ID_PREFIX = "doc-".getBytes(StandardCharsets.US_ASCII);
+
+    private final long seed;
+    private final DocSize size;
+    private final int stride;
+    private final Random random = new Random();
+    private final List<Document> batch = new ArrayList<>();
+    private long ordinal;
+    private boolean binaryIds;
+
+    protected DocumentGenerator(final long seed, final DocSize size, final long first, final int stride) {
+        if (first < 0 || stride < 1) {
+            throw new IllegalArgumentException("first must be >= 0 and stride >= 1");
+        }
+        this.seed = seed;
+        this.size = size;
+        this.ordinal = first;
+        this.stride = stride;
+    }
+
+    public static DocumentGenerator create(final String type, final long seed, final DocSize size)
+            throws IOException {
+        return create(type, seed, size, 0, 1);
+    }
+
+    /**
+     * @param first  the ordinal of the first document.
+     * @param stride the distance between ordinals of consecutive documents.
+     */
+    public static DocumentGenerator create(final String type, final long seed, final DocSize size,
+            final long first, final int stride) throws IOException {
+        switch (type) {
+        case "id":
+            return new IdGenerator(seed, size, first, stride);
+        case "linedocs":
+            return new LineDocsGenerator(seed, size, first, stride);
+        case "synthetic":
+            return new SyntheticDocsGenerator(seed, size, first, stride);
+        default:
+            throw new IllegalArgumentException("Unknown document generator " + type);
+        }
+    }
+
+    /**
+     * @return the document at the next ordinal, valid until the next call.
+     */
+    public final Document next() throws IOException {
+        return next(1).get(0);
+    }
+
+    /**
+     * @return distinct documents for the next count ordinals, valid until the
+     *         next call.
+     */
+    public final List<Document> next(final int count) throws IOException {
+        batch.clear();
+        for (int slot = 0; slot < count; slot++) {
+            random.setSeed(SyntheticDocs.mix(seed + ordinal * 0x9E3779B97F4A7C15L));
+            batch.add(generate(slot, ordinal, random, size.targetChars(random)));
+            ordinal += stride;
+        }
+        return batch;
+    }
+
+    /**
+     * @return the ordinal of the document next() will return.
+     */
+    public final long ordinal() {
+        return ordinal;
+    }
+
+    /**
+     * Write each _id's UTF-8 bytes into a BytesRef its field reuses, so that
+     * generating them allocates no id strings. The _ids index as the same
+     * terms, but are stored as binary values rather than strings. Call before
+     * the first next().
+     */
+    public final void useBinaryIds() {
+        binaryIds = true;
+    }
+
+    /**
+     * @return an _id field for setId to fill in.
+     */
+    protected final StringField newIdField() {
+        if (binaryIds) {
+            return new StringField("_id", new BytesRef(new byte[ID_PREFIX.length + 19]), Store.YES);
+        }
+        return new StringField("_id", "", Store.YES);
+    }
+
+    /**
+     * Set idField, from newIdField, to the _id of the document at ordinal.
+     */
+    protected final void setId(final StringField idField, final long ordinal) {
+        if (!binaryIds) {
+            idField.setStringValue("doc-" + ordinal);
+            return;
+        }
+        // digits from the end of the buffer backwards, then the prefix
+        final BytesRef id = idField.binaryValue();
+        int start = id.bytes.length;
+        long remaining = ordinal;
+        do {
+            id.bytes[--start] = (byte) ('0' + remaining % 10);
+            remaining /= 10;
+        } while (remaining != 0);
+        start -= ID_PREFIX.length;
+        System.arraycopy(ID_PREFIX, 0, id.bytes, start, ID_PREFIX.length);
+        id.offset = start;
+        id.length = id.bytes.length - start;
+    }
+
+    /**
+     * @param slot        the position in the batch, documents in different
+     *                    slots must not share instances.
+     * @param random      seeded for this ordinal.
+     * @param targetChars the amount of text to generate, -1 for the source's
+     *                    own.
+     */
+    protected abstract Document generate(final int slot, final long ordinal, final Random random,
+            final int targetChars) throws IOException;
+
+    @Override
+    public void close() throws IOException {
+    }
+
+    private static final class IdGenerator extends DocumentGenerator {
+
+        private final List<StringField> idFields = new ArrayList<>();
+        private final List<Document> docs = new ArrayList<>();
+
+        IdGenerator(final long seed, final DocSize size, final long first, final int stride) {
+            super(seed, size, first, stride);
+        }
+
+        @Override
+        protected Document generate(final int slot, final long ordinal, final Random random,
+                final int targetChars) {
+            if (slot == docs.size()) {
+                final StringField idField = newIdField();
+                final Document doc = new Document();
+                doc.add(idField);
+                idFields.add(idField);
+                docs.add(doc);
+            }
+            setId(idFields.get(slot), ordinal);
+            return docs.get(slot);
+        }
+    }
+
+}
@@ -0,0 +1,74 @@
+package com.cloudant.fdblucene.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+import org.HdrHistogram.Histogram;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.profile.InternalProfiler;
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.ScalarResult;
+
+import com.cloudant.fdblucene.store.IOMetrics;
+import com.cloudant.fdblucene.store.IOMetrics.Counter;
+import com.cloudant.fdblucene.store.IOMetrics.Latency;
+
+/**
+ * Reports IOMetrics per benchmark operation, for example io.bytes_read/op on
+ * a search benchmark or io.bytes_written/op on an indexing one, along with
+ * directory call latency percentiles. Enables metering, so any benchmark
+ * whose setup goes through IOMetrics.wrap is covered.
+ *
+ * Use with -prof com.cloudant.fdblucene.benchmark.IOMeterProfiler. Counts
+ * include whatever the iteration's setup and teardown did, such as opening
+ * the reader.
+ *
+ */
+public final class IOMeterProfiler implements InternalProfiler {
+
+    public IOMeterProfiler() {
+        IOMetrics.enable();
+    }
+
+    @Override
+    public String getDescription() {
+        return "Directory I/O per operation";
+    }
+
+    @Override
+    public void beforeIteration(final BenchmarkParams benchmarkParams, final IterationParams iterationParams) {
+        IOMetrics.reset();
+    }
+
+    @Override
+    public Collection<? extends Result<?>> afterIteration(final BenchmarkParams benchmarkParams,
+            final IterationParams iterationParams, final IterationResult result) {
+        final IOMetrics.Snapshot snapshot = IOMetrics.snapshot();
+        final long ops = Math.max(1, result.getMetadata().getMeasuredOps());
+        final List<Result<?>> results = new ArrayList<>();
+        for (final Counter counter : Counter.values()) {
+            results.add(new ScalarResult("io." + counter.name().toLowerCase(Locale.ROOT) + "/op",
+                    snapshot.count(counter) / (double) ops, counter.unit() + "/op", AggregationPolicy.AVG));
+        }
+        for (final Latency latency : Latency.values()) {
+            final Histogram histogram = snapshot.latency(latency);
+            if (histogram.getTotalCount() == 0) {
+                continue;
+            }
+            final String name = "io." + latency.name().toLowerCase(Locale.ROOT) + ".latency";
+            results.add(new ScalarResult(name + ".p50", histogram.getValueAtPercentile(50) / 1000.0, "us",
+                    AggregationPolicy.AVG));
+            results.add(new ScalarResult(name + ".p99", histogram.getValueAtPercentile(99) / 1000.0, "us",
+                    AggregationPolicy.AVG));
+            results.add(new ScalarResult(name + ".max", histogram.getMaxValue() / 1000.0, "us",
+                    AggregationPolicy.MAX));
+        }
+        return results;
+    }
+
+}
@@ -0,0 +1,343 @@
+package com.cloudant.fdblucene.benchmark;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.apache.lucene.index.CodecReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.Directory;
+
+/**
+ * A bounded set of open indexes, one IndexWriter and near real time
+ * SearcherManager per tenant, opened on first use and closed least recently
+ * used first.
+ *
+ * Open indexes are limited in number and in cost, the heap a tenant holds
+ * open: the ramBytesUsed of its reader's segments plus its writer's buffered
+ * documents. Indexes in use are never closed, so the pool can run over both
+ * limits while every open index is leased. Closing an index commits it, and
+ * the thread whose acquire pushed the pool over its limits pays for that.
+ *
+ * A tenant's searcher is refreshed at most once every maxStaleMillis, so
+ * searches may miss that long of its most recent changes.
+ *
+ */
+public final class IndexPool implements Closeable {
+
+    public interface Opener {
+        Directory open(String name) throws IOException;
+    }
+
+    /**
+     * The use of one tenant's index, which stays open until the lease is
+     * closed.
+     */
+    public final class Lease implements Closeable {
+        private final Entry entry;
+        private IndexSearcher searcher;
+
+        private Lease(final Entry entry) {
+            this.entry = entry;
+        }
+
+        public IndexWriter writer() {
+            return entry.writer;
+        }
+
+        /**
+         * @return a searcher that sees changes made more than maxStaleMillis
+         *         before the first call.
+         */
+        public IndexSearcher searcher() throws IOException {
+            if (searcher == null) {
+                final long now = System.nanoTime();
+                if (now - entry.refreshed >= maxStaleNanos) {
+                    entry.refreshed = now;
+                    entry.manager.maybeRefresh();
+                }
+                searcher = entry.manager.acquire();
+                long bytes = 0;
+                for (final LeafReaderContext leaf : searcher.getIndexReader().leaves()) {
+                    if (leaf.reader() instanceof CodecReader) {
+                        bytes += ((CodecReader) leaf.reader()).ramBytesUsed();
+                    }
+                }
+                entry.readerBytes = bytes;
+            }
+            return searcher;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (searcher != null) {
+                    entry.manager.release(searcher);
+                }
+            } finally {
+                release(entry);
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final String name;
+        // guarded by the entry
+        private Directory dir;
+        private IndexWriter writer;
+        private SearcherManager manager;
+        private volatile long readerBytes;
+        private volatile long refreshed;
+        // guarded by the pool
+        private int refs;
+        private boolean open;
+        private boolean closing;
+        private long cost;
+
+        private Entry(final String name) {
+            this.name = name;
+        }
+
+        private long cost() {
+            return readerBytes + writer.ramBytesUsed();
+        }
+    }
+
+    private final Opener opener;
+    private final Supplier<IndexWriterConfig> config;
+    private final int maxOpen;
+    private final long maxCost;
+    private final long maxStaleNanos;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private int open;
+    private long cost;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final Recorder openLatency = new Recorder(3);
+    private final Recorder closeLatency = new Recorder(3);
+
+    /**
+     * @param config a new config for each index opened.
+     */
+    public IndexPool(final Opener opener, final Supplier<IndexWriterConfig> config, final int maxOpen,
+            final long maxCost, final long maxStaleMillis) {
+        if (maxOpen < 1) {
+            throw new IllegalArgumentException("maxOpen must be at least 1.");
+        }
+        this.opener = opener;
+        this.config = config;
+        this.maxOpen = maxOpen;
+        this.maxCost = maxCost;
+        this.maxStaleNanos = TimeUnit.MILLISECONDS.toNanos(maxStaleMillis);
+    }
+
+    /**
+     * Open name's index if need be and lease it.
+     */
+    public Lease acquire(final String name) throws IOException {
+        final Entry entry;
+        synchronized (this) {
+            Entry existing = entries.get(name);
+            if (existing == null) {
+                existing = new Entry(name);
+                entries.put(name, existing);
+            }
+            entry = existing;
+            // an evicted index finishes closing before it is opened again
+            while (entry.closing) {
+                try {
+                    wait();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+            }
+            entry.refs++;
+        }
+        try {
+            open(entry);
+        } catch (final IOException | RuntimeException e) {
+            release(entry);
+            throw e;
+        }
+        closeAll(evict());
+        return new Lease(entry);
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    /**
+     * @return acquires that had to open the index.
+     */
+    public long misses() {
+        return misses.get();
+    }
+
+    public long evictions() {
+        return evictions.get();
+    }
+
+    public synchronized int openCount() {
+        return open;
+    }
+
+    public synchronized long cost() {
+        return cost;
+    }
+
+    /**
+     * @return open latency in nanoseconds since the last call.
+     */
+    public Histogram openLatency() {
+        return openLatency.getIntervalHistogram();
+    }
+
+    /**
+     * @return close latency, including the commit, in nanoseconds since the
+     *         last call.
+     */
+    public Histogram closeLatency() {
+        return closeLatency.getIntervalHistogram();
+    }
+
+    /**
+     * Close every open index, leased or not.
+     */
+    @Override
+    public void close() throws IOException {
+        final List<Entry> victims = new ArrayList<>();
+        synchronized (this) {
+            for (final Entry entry : entries.values()) {
+                if (entry.open) {
+                    entry.open = false;
+                    victims.add(entry);
+                }
+            }
+            entries.clear();
+            open = 0;
+            cost = 0;
+        }
+        closeAll(victims);
+    }
+
+    private void open(final Entry entry) throws IOException {
+        synchronized (entry) {
+            if (entry.writer != null) {
+                hits.incrementAndGet();
+                return;
+            }
+            misses.incrementAndGet();
+            final long start = System.nanoTime();
+            final Directory dir = opener.open(entry.name);
+            try {
+                entry.writer = new IndexWriter(dir, config.get());
+                entry.manager = new SearcherManager(entry.writer, null);
+            } catch (final IOException | RuntimeException e) {
+                if (entry.writer != null) {
+                    entry.writer.rollback();
+                    entry.writer = null;
+                }
+                dir.close();
+                throw e;
+            }
+            entry.dir = dir;
+            openLatency.recordValue(System.nanoTime() - start);
+            entry.readerBytes = 0;
+            entry.refreshed = System.nanoTime();
+            synchronized (this) {
+                entry.open = true;
+                entry.cost = entry.cost();
+                open++;
+                cost += entry.cost;
+            }
+        }
+    }
+
+    private void release(final Entry entry) throws IOException {
+        final List<Entry> victims;
+        synchronized (this) {
+            entry.refs--;
+            if (entry.open) {
+                final long current = entry.cost();
+                cost += current - entry.cost;
+                entry.cost = current;
+            }
+            victims = evict();
+        }
+        closeAll(victims);
+    }
+
+    /**
+     * @return the least recently used idle indexes to close to bring the pool
+     *         within its limits, already removed from its accounting.
+     */
+    private synchronized List<Entry> evict() {
+        final List<Entry> result = new ArrayList<>();
+        for (final Entry entry : entries.values()) {
+            if (open <= maxOpen && cost <= maxCost) {
+                break;
+            }
+            if (entry.open && entry.refs == 0) {
+                entry.open = false;
+                entry.closing = true;
+                open--;
+                cost -= entry.cost;
+                entry.cost = 0;
+                evictions.incrementAndGet();
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    private void closeAll(final List<Entry> victims) throws IOException {
+        IOException failure = null;
+        for (final Entry entry : victims) {
+            try {
+                synchronized (entry) {
+                    final long start = System.nanoTime();
+                    try {
+                        entry.manager.close();
+                        entry.writer.close();
+                    } finally {
+                        entry.dir.close();
+                        entry.manager = null;
+                        entry.writer = null;
+                        entry.dir = null;
+                    }
+                    closeLatency.recordValue(System.nanoTime() - start);
+                }
+            } catch (final IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            } finally {
+                synchronized (this) {
+                    entry.closing = false;
+                    notifyAll();
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+}
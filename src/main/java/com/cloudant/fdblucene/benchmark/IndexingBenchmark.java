@@ -8,9 +8,6 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.lucene.codecs.lucene80.Lucene80Codec;
-import org.apache.lucene.document.Document;
-import org.apache.lucene.document.Field.Store;
-import org.apache.lucene.document.StringField;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.store.Directory;
@@ -29,6 +26,7 @@ import org.openjdk.jmh.annotations.State;
 import org.openjdk.jmh.annotations.TearDown;
 import org.openjdk.jmh.annotations.Timeout;
 import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
 import org.openjdk.jmh.runner.Runner;
 import org.openjdk.jmh.runner.RunnerException;
 import org.openjdk.jmh.runner.options.Options;
@@ -37,6 +35,8 @@ import org.openjdk.jmh.runner.options.OptionsBuilder;
 import com.apple.foundationdb.Database;
 import com.apple.foundationdb.FDB;
 import com.cloudant.fdblucene.FDBDirectory;
+import com.cloudant.fdblucene.benchmark.DocumentGenerator.DocSize;
+import com.cloudant.fdblucene.store.IOMetrics;
 
 public class IndexingBenchmark {
 
@@ -49,22 +49,29 @@ public class IndexingBenchmark {
     @OutputTimeUnit(TimeUnit.SECONDS)
     public static abstract class AbstractIndexingBenchmark {
         protected Database db;
+        private final long seed = Long.getLong("seed", 42L);
         private Directory dir;
-        private Document doc;
         private IndexWriter writer;
-        private StringField idField;
+        private DocumentGenerator documents;
         private AtomicLong counter = new AtomicLong();
 
         @Param({ "10", "100", "1000", "10000" })
-        private int commitEvery;
+        int commitEvery;
+
+        /** id, linedocs or synthetic, see DocumentGenerator. */
+        @Param({ "id" })
+        String generator;
+
+        /** tiny, median, huge or mixed. */
+        @Param({ "median" })
+        String docSize;
 
         public abstract Directory getDirectory(final Path path) throws IOException;
 
         @Benchmark
         public long indexing() throws Exception {
             final long count = counter.incrementAndGet();
-            idField.setStringValue("doc-" + count);
-            final long result = writer.addDocument(doc);
+            final long result = writer.addDocument(documents.next());
             if (count % commitEvery == 0) {
                 writer.commit();
             }
@@ -74,18 +81,19 @@ public class IndexingBenchmark {
         @Setup(Level.Iteration)
         public void setup() throws Exception {
             final IndexWriterConfig config = indexWriterConfig();
-            dir = getDirectory(generateTestPath());
+            dir = IOMetrics.wrap(getDirectory(generateTestPath()));
             cleanDirectory();
             writer = new IndexWriter(dir, config);
-            doc = new Document();
-            idField = new StringField("_id", "", Store.YES);
-            doc.add(idField);
+            documents = DocumentGenerator.create(generator, seed, DocSize.parse(docSize));
+            // keep id strings out of the allocation the GC profiler reports
+            documents.useBinaryIds();
             counter.set(0L);
         }
 
         @TearDown(Level.Iteration)
         public void teardown() throws Exception {
             writer.close();
+            documents.close();
             cleanDirectory();
         }
 
@@ -115,10 +123,10 @@ public class IndexingBenchmark {
     public static class FDBIndexingBenchmark extends AbstractIndexingBenchmark {
 
         @Param({ "1000", "10000", "100000" })
-        private int pageSize;
+        int pageSize;
 
         @Param({ "1", "10", "100" })
-        private int pagesPerTxn;
+        int pagesPerTxn;
 
         @Setup(Level.Trial)
         public void startFDBNetworking() {
@@ -148,7 +156,10 @@ public class IndexingBenchmark {
     }
 
     public static void main(final String[] args) throws RunnerException {
-        final Options opt = new OptionsBuilder().include(IndexingBenchmark.class.getSimpleName()).build();
+        final Options opt = new OptionsBuilder()
+                .include(IndexingBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
         new Runner(opt).run();
     }
 
@@ -0,0 +1,155 @@
+package com.cloudant.fdblucene.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.search.Query;
+
+import com.cloudant.fdblucene.benchmark.IndexingBenchmark.AbstractIndexingBenchmark;
+import com.cloudant.fdblucene.benchmark.IndexingBenchmark.FDBIndexingBenchmark;
+import com.cloudant.fdblucene.benchmark.IndexingBenchmark.NIOFSIndexingBenchmark;
+
+/**
+ * Open-loop latency of the search and indexing benchmarks at a sweep of fixed
+ * request rates, reporting percentiles per directory type and the first rate
+ * at which latency bends.
+ *
+ * Not a JMH benchmark, run it with
+ * java -Ddir=... -cp benchmarks.jar com.cloudant.fdblucene.benchmark.LatencyHarness
+ *
+ * Settings are system properties: workload (search, indexing or both),
+ * directories (fdb, nios or both), searchRates and indexRates (comma separated
+ * requests per second), duration and warmup (seconds per rate), threads
+ * (concurrent searches), and commitEvery, generator, docSize, pageSize and
+ * pagesPerTxn as in IndexingBenchmark.
+ *
+ */
+public final class LatencyHarness {
+
+    /**
+     * A rate saturates the system when it is not reached or when p99 grows
+     * this many times over its value at the lowest rate.
+     */
+    private static final double SATURATION_FACTOR = 10.0;
+
+    private final long duration = Long.getLong("duration", 30);
+    private final long warmup = Long.getLong("warmup", 10);
+    private final int searchThreads = Integer.getInteger("threads", Runtime.getRuntime().availableProcessors() * 4);
+
+    public static void main(final String[] args) throws Exception {
+        final LatencyHarness harness = new LatencyHarness();
+        final String workload = System.getProperty("workload", "both");
+        final String directories = System.getProperty("directories", "both");
+        final boolean fdb = !"nios".equals(directories);
+        final boolean nios = !"fdb".equals(directories);
+
+        if (!"indexing".equals(workload)) {
+            final double[] rates = rates(System.getProperty("searchRates", "100,200,500,1000,2000,5000"));
+            if (fdb) {
+                final FDBSearchSetup setup = new FDBSearchSetup();
+                setup.startFDBNetworking();
+                try {
+                    harness.sweepSearch("FDBDirectory", setup, rates);
+                } finally {
+                    setup.closeFDB();
+                }
+            }
+            if (nios) {
+                final NIOSSearchSetup setup = new NIOSSearchSetup();
+                setup.setupNIOS();
+                harness.sweepSearch("NIOFSDirectory", setup, rates);
+                setup.cleanDirectory();
+            }
+        }
+
+        if (!"search".equals(workload)) {
+            final double[] rates = rates(System.getProperty("indexRates", "100,500,1000,2000,5000,10000"));
+            if (fdb) {
+                final FDBIndexingBenchmark benchmark = new FDBIndexingBenchmark();
+                benchmark.pageSize = Integer.getInteger("pageSize", 10000);
+                benchmark.pagesPerTxn = Integer.getInteger("pagesPerTxn", 10);
+                benchmark.startFDBNetworking();
+                try {
+                    harness.sweepIndexing("FDBDirectory", benchmark, rates);
+                } finally {
+                    benchmark.closeFDB();
+                }
+            }
+            if (nios) {
+                harness.sweepIndexing("NIOFSDirectory", new NIOFSIndexingBenchmark(), rates);
+            }
+        }
+    }
+
+    private void sweepSearch(final String name, final SearchSetup setup, final double[] rates) throws Exception {
+        final OpenLoopDriver driver = new OpenLoopDriver(searchThreads);
+        final Query[] queries = setup.searchQueries;
+        final OpenLoopDriver.Operation search = () -> {
+            setup.searcher.search(queries[ThreadLocalRandom.current().nextInt(queries.length)], setup.topNDocs);
+        };
+        setup.createReader();
+        try {
+            sweep("search " + name, driver, search, rates);
+        } finally {
+            setup.teardown();
+        }
+    }
+
+    private void sweepIndexing(final String name, final AbstractIndexingBenchmark benchmark, final double[] rates)
+            throws Exception {
+        benchmark.commitEvery = Integer.getInteger("commitEvery", 1000);
+        benchmark.generator = System.getProperty("generator", "id");
+        benchmark.docSize = System.getProperty("docSize", "median");
+        // The benchmark reuses one Document so only one add can be in flight,
+        // any backlog shows up as queueing delay.
+        final OpenLoopDriver driver = new OpenLoopDriver(1);
+        benchmark.setup();
+        try {
+            sweep("indexing " + name, driver, benchmark::indexing, rates);
+        } finally {
+            benchmark.teardown();
+        }
+    }
+
+    private void sweep(final String name, final OpenLoopDriver driver, final OpenLoopDriver.Operation operation,
+            final double[] rates) throws InterruptedException {
+        System.out.println();
+        System.out.println(name);
+        driver.run(operation, rates[0], warmup, TimeUnit.SECONDS);
+        System.out.println(OpenLoopDriver.Result.header());
+        double baselineP99 = 0;
+        Double saturation = null;
+        for (final double rate : rates) {
+            final OpenLoopDriver.Result result = driver.run(operation, rate, duration, TimeUnit.SECONDS);
+            System.out.println(result);
+            final long p99 = result.latency.getValueAtPercentile(99);
+            if (baselineP99 == 0) {
+                baselineP99 = p99;
+            }
+            if (saturation == null
+                    && (result.achievedRate < rate * 0.95 || p99 > baselineP99 * SATURATION_FACTOR)) {
+                saturation = rate;
+            }
+        }
+        if (saturation == null) {
+            System.out.println("No saturation up to " + rates[rates.length - 1] + "/s");
+        } else {
+            System.out.println("Saturated at " + saturation + "/s");
+        }
+    }
+
+    private static double[] rates(final String spec) {
+        final List<Double> result = new ArrayList<>();
+        for (final String rate : spec.split(",")) {
+            result.add(Double.parseDouble(rate.trim()));
+        }
+        final double[] array = new double[result.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = result.get(i);
+        }
+        return array;
+    }
+
+}
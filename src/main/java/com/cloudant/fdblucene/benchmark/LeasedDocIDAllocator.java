@@ -0,0 +1,65 @@
+package com.cloudant.fdblucene.benchmark;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.apple.foundationdb.TransactionContext;
+import com.cloudant.fdblucene.DocIDAllocator;
+
+/**
+ * Hands out doc IDs from a block leased from a DocIDAllocator, so only one
+ * transaction is needed per leaseSize IDs. Threads claim IDs from the current
+ * lease with a single atomic add; only renewing the lease takes a lock.
+ *
+ * IDs left in a lease when the process exits are never handed out.
+ *
+ */
+public final class LeasedDocIDAllocator {
+
+    private static final class Lease {
+        private final int[] ids;
+        private final AtomicInteger next = new AtomicInteger();
+
+        private Lease(final int[] ids) {
+            this.ids = ids;
+        }
+    }
+
+    private final DocIDAllocator allocator;
+    private final TransactionContext txc;
+    private final int leaseSize;
+    private volatile Lease lease = new Lease(new int[0]);
+
+    public LeasedDocIDAllocator(final DocIDAllocator allocator, final TransactionContext txc, final int leaseSize) {
+        if (leaseSize < 1) {
+            throw new IllegalArgumentException("leaseSize must be positive.");
+        }
+        this.allocator = allocator;
+        this.txc = txc;
+        this.leaseSize = leaseSize;
+    }
+
+    public int[] allocate(final int count) {
+        final int[] result = new int[count];
+        int filled = 0;
+        while (filled < count) {
+            final Lease current = lease;
+            final int wanted = count - filled;
+            final int start = current.next.getAndAdd(wanted);
+            if (start < current.ids.length) {
+                final int claimed = Math.min(wanted, current.ids.length - start);
+                System.arraycopy(current.ids, start, result, filled, claimed);
+                filled += claimed;
+            } else {
+                renew(current);
+            }
+        }
+        return result;
+    }
+
+    private synchronized void renew(final Lease exhausted) {
+        if (lease == exhausted) {
+            lease = new Lease(allocator.allocate(txc, leaseSize));
+        }
+    }
+
+}
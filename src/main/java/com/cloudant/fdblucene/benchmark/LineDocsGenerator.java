@@ -0,0 +1,221 @@
+package com.cloudant.fdblucene.benchmark;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LuceneTestCase;
+
+import com.cloudant.fdblucene.couchdb.SyntheticDocs;
+
+/**
+ * Documents from a LineFileDocs file, read a line at a time.
+ *
+ * Ordinal n is line (offset + n) modulo the number of lines, where offset
+ * comes from the seed. Tiny documents cut the body short at a word boundary,
+ * huge ones pad it with words drawn from the start of the file.
+ *
+ */
+final class LineDocsGenerator extends DocumentGenerator {
+
+    private static final int VOCABULARY_SIZE = 2000;
+
+    /** Line counts and padding words, by source, so each file is scanned once. */
+    private static final Map<String, Header> HEADERS = new HashMap<>();
+
+    private final String source;
+    private final Header header;
+    private final long offset;
+    private final List<Slot> slots = new ArrayList<>();
+    private final StringBuilder body = new StringBuilder();
+    private BufferedReader reader;
+    private long line;
+
+    LineDocsGenerator(final long seed, final DocSize size, final long first, final int stride)
+            throws IOException {
+        super(seed, size, first, stride);
+        this.source = System.getProperty("lineDocs", LuceneTestCase.DEFAULT_LINE_DOCS_FILE);
+        this.header = header(source);
+        this.offset = Math.floorMod(SyntheticDocs.mix(seed), header.lineCount);
+    }
+
+    @Override
+    protected Document generate(final int slot, final long ordinal, final Random random,
+            final int targetChars) throws IOException {
+        final String text = readLine((offset + ordinal) % header.lineCount);
+        final int title = text.indexOf('\t');
+        final int date = text.indexOf('\t', title + 1);
+        final String titleText = title == -1 ? "" : text.substring(0, title);
+        final String[] vocabulary = header.vocabulary;
+
+        body.setLength(0);
+        body.append(body(text));
+        if (targetChars >= 0 && body.length() > targetChars) {
+            final int cut = body.lastIndexOf(" ", targetChars);
+            body.setLength(cut > 0 ? cut : targetChars);
+        }
+        while (targetChars >= 0 && body.length() < targetChars) {
+            // skew towards the front of the vocabulary, like natural text
+            body.append(' ').append(vocabulary[random.nextInt(random.nextInt(vocabulary.length) + 1)]);
+        }
+
+        if (slot == slots.size()) {
+            slots.add(new Slot(newIdField()));
+        }
+        final Slot result = slots.get(slot);
+        setId(result.idField, ordinal);
+        result.titleField.setStringValue(titleText);
+        result.titleTokenizedField.setStringValue(titleText);
+        result.titleDVField.setBytesValue(new BytesRef(titleText));
+        result.dateField.setStringValue(date == -1 ? "" : text.substring(title + 1, date));
+        result.bodyField.setStringValue(body.toString());
+        result.ordinalField.setLongValue(ordinal);
+        result.ordinalDVField.setLongValue(ordinal);
+        return result.doc;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (reader != null) {
+            reader.close();
+            reader = null;
+        }
+    }
+
+    /**
+     * Move forward to the given line, starting from the top of the file when
+     * it is behind us.
+     */
+    private String readLine(final long target) throws IOException {
+        if (reader == null || target < line) {
+            close();
+            reader = open(source);
+            line = 0;
+        }
+        while (true) {
+            final String text = reader.readLine();
+            if (text == null) {
+                throw new IOException(source + " changed while being read");
+            }
+            if (text.startsWith("#")) {
+                continue;
+            }
+            if (line++ == target) {
+                return text;
+            }
+        }
+    }
+
+    private static synchronized Header header(final String source) throws IOException {
+        Header result = HEADERS.get(source);
+        if (result == null) {
+            final Set<String> words = new LinkedHashSet<>();
+            long count = 0;
+            try (final BufferedReader in = open(source)) {
+                String text;
+                while ((text = in.readLine()) != null) {
+                    if (text.startsWith("#")) {
+                        continue;
+                    }
+                    count++;
+                    if (words.size() < VOCABULARY_SIZE) {
+                        for (final String word : body(text).split("\\s+")) {
+                            if (!word.isEmpty() && words.size() < VOCABULARY_SIZE) {
+                                words.add(word);
+                            }
+                        }
+                    }
+                }
+            }
+            if (count == 0) {
+                throw new IOException(source + " has no documents");
+            }
+            result = new Header(count, words.toArray(new String[words.size()]));
+            HEADERS.put(source, result);
+        }
+        return result;
+    }
+
+    private static BufferedReader open(final String source) throws IOException {
+        final Path path = Paths.get(source);
+        InputStream in;
+        if (Files.exists(path)) {
+            in = Files.newInputStream(path);
+        } else {
+            in = LuceneTestCase.class.getResourceAsStream(source);
+            if (in == null) {
+                throw new FileNotFoundException(source);
+            }
+        }
+        if (source.endsWith(".gz")) {
+            in = new GZIPInputStream(in, 65536);
+        }
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 65536);
+    }
+
+    private static String body(final String text) {
+        final int title = text.indexOf('\t');
+        final int date = title == -1 ? -1 : text.indexOf('\t', title + 1);
+        return date == -1 ? text : text.substring(date + 1);
+    }
+
+    private static final class Header {
+        private final long lineCount;
+        private final String[] vocabulary;
+
+        private Header(final long lineCount, final String[] vocabulary) {
+            this.lineCount = lineCount;
+            this.vocabulary = vocabulary;
+        }
+    }
+
+    /**
+     * The fields of one document in a batch.
+     */
+    private static final class Slot {
+        private final Document doc = new Document();
+        private final StringField idField;
+        private final StringField titleField = new StringField("title", "", Store.YES);
+        private final TextField titleTokenizedField = new TextField("titleTokenized", "", Store.YES);
+        private final SortedDocValuesField titleDVField = new SortedDocValuesField("titleDV", new BytesRef());
+        private final StringField dateField = new StringField("date", "", Store.YES);
+        private final TextField bodyField = new TextField("body", "", Store.YES);
+        private final LongPoint ordinalField = new LongPoint("ordinal", 0L);
+        private final NumericDocValuesField ordinalDVField = new NumericDocValuesField("ordinal", 0L);
+
+        private Slot(final StringField idField) {
+            this.idField = idField;
+            doc.add(idField);
+            doc.add(titleField);
+            doc.add(titleTokenizedField);
+            doc.add(titleDVField);
+            doc.add(dateField);
+            doc.add(bodyField);
+            doc.add(ordinalField);
+            doc.add(ordinalDVField);
+        }
+    }
+
+}
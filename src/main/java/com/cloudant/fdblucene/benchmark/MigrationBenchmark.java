@@ -0,0 +1,200 @@
+package com.cloudant.fdblucene.benchmark;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.codecs.lucene80.Lucene80Codec;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Timeout;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.apple.foundationdb.Database;
+import com.apple.foundationdb.FDB;
+import com.cloudant.fdblucene.FDBDirectory;
+import com.cloudant.fdblucene.benchmark.DocumentGenerator.DocSize;
+import com.cloudant.fdblucene.store.IndexMigrator;
+
+/**
+ * Time to migrate a committed NIOFSDirectory index with IndexMigrator, into
+ * FDB or, for comparison, into another NIOFSDirectory.
+ *
+ * The source index of docs (system property, default 100000) line docs is
+ * built under migration-source beneath dir and kept between runs. Each
+ * invocation empties the target, migration-target beneath dir, and copies
+ * the fraction copied of the source's bytes into it beforehand, as an
+ * interrupted migration would leave it, so that the timed migration resumes.
+ * The files and MB/sec of each migration are printed after it.
+ *
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@Fork(1)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Timeout(time = 30, timeUnit = TimeUnit.MINUTES)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MigrationBenchmark {
+
+    @State(Scope.Benchmark)
+    public static abstract class AbstractMigrationState {
+        protected Database db;
+        private final long seed = Long.getLong("seed", 42L);
+        private final long docs = Long.getLong("docs", 100000L);
+        private Directory source;
+        private Directory target;
+        private IndexMigrator migrator;
+        private IndexMigrator.Result result;
+
+        @Param({ "1", "4", "16" })
+        int threads;
+
+        @Param({ "true", "false" })
+        boolean verify;
+
+        /** Fraction of the source bytes already in the target. */
+        @Param({ "0", "0.5" })
+        double copied;
+
+        public abstract Directory getDirectory(final Path path) throws IOException;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            final Path root = generateTestPath();
+            source = new NIOFSDirectory(root.resolve("migration-source"));
+            new StreamingIndexBuilder("linedocs", seed, DocSize.MEDIAN, 1, docs).build(source,
+                    indexWriterConfig(), docs);
+            target = getDirectory(root.resolve("migration-target"));
+            migrator = new IndexMigrator(threads, verify);
+        }
+
+        @Setup(Level.Invocation)
+        public void prepareTarget() throws IOException {
+            cleanDirectory(target);
+            final SegmentInfos infos = SegmentInfos.readLatestCommit(source);
+            long total = 0;
+            for (final String name : infos.files(false)) {
+                total += source.fileLength(name);
+            }
+            long done = 0;
+            for (final String name : infos.files(false)) {
+                if (done >= copied * total) {
+                    break;
+                }
+                target.copyFrom(source, name, name, IOContext.DEFAULT);
+                done += source.fileLength(name);
+            }
+        }
+
+        @TearDown(Level.Invocation)
+        public void report() {
+            System.out.println(result);
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() throws Exception {
+            cleanDirectory(target);
+            target.close();
+            source.close();
+        }
+
+        IndexMigrator.Result migrate() throws IOException {
+            result = migrator.migrate(source, target);
+            return result;
+        }
+
+        private IndexWriterConfig indexWriterConfig() {
+            final IndexWriterConfig config = new IndexWriterConfig();
+            config.setUseCompoundFile(false);
+            config.setCodec(new Lucene80Codec());
+            return config;
+        }
+
+        private static void cleanDirectory(final Directory dir) throws IOException {
+            for (final String name : dir.listAll()) {
+                dir.deleteFile(name);
+            }
+        }
+
+        private Path generateTestPath() {
+            final String dir = System.getProperty("dir");
+            if (dir == null) {
+                throw new Error("System property 'dir' not set.");
+            }
+            final FileSystem fileSystem = FileSystems.getDefault();
+            return fileSystem.getPath(dir);
+        }
+    }
+
+    public static class FDBMigrationState extends AbstractMigrationState {
+
+        @Param({ "1000", "10000", "100000" })
+        int pageSize;
+
+        @Param({ "1", "10", "100" })
+        int pagesPerTxn;
+
+        @Override
+        public void setup() throws Exception {
+            FDB.selectAPIVersion(600);
+            db = FDB.instance().open();
+            super.setup();
+        }
+
+        @Override
+        public void teardown() throws Exception {
+            super.teardown();
+            db.close();
+        }
+
+        @Override
+        public Directory getDirectory(final Path path) throws IOException {
+            return FDBDirectory.open(db, path, pageSize, pageSize * pagesPerTxn);
+        }
+    }
+
+    public static class NIOFSMigrationState extends AbstractMigrationState {
+
+        @Override
+        public Directory getDirectory(final Path path) throws IOException {
+            return new NIOFSDirectory(path);
+        }
+    }
+
+    @Benchmark
+    public IndexMigrator.Result migrateFDB(final FDBMigrationState state) throws IOException {
+        return state.migrate();
+    }
+
+    @Benchmark
+    public IndexMigrator.Result migrateNIOFS(final NIOFSMigrationState state) throws IOException {
+        return state.migrate();
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        final Options opt = new OptionsBuilder().include(MigrationBenchmark.class.getSimpleName()).build();
+        new Runner(opt).run();
+    }
+
+}
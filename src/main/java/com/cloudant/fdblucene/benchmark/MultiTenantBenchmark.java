@@ -0,0 +1,331 @@
+package com.cloudant.fdblucene.benchmark;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+import org.apache.lucene.codecs.lucene80.Lucene80Codec;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Timeout;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.apple.foundationdb.Database;
+import com.apple.foundationdb.FDB;
+import com.cloudant.fdblucene.FDBDirectory;
+import com.cloudant.fdblucene.benchmark.DocumentGenerator.DocSize;
+import com.cloudant.fdblucene.benchmark.QueryWorkload.Frequency;
+import com.cloudant.fdblucene.benchmark.QueryWorkload.QueryClass;
+
+/**
+ * Many small indexes, one per tenant as CouchDB keeps one per database,
+ * served through an IndexPool that holds at most maxOpen of them open within
+ * budgetMB of heap.
+ *
+ * Each trial builds tenants indexes of docsPerTenant (system property,
+ * default 100) line docs each, under tenant-NNNNN beneath dir. Every
+ * operation picks a tenant from a scrambled Zipfian with the given skew and
+ * either updates one of its documents, with probability writes, or runs a
+ * TermQuery against it, which may miss its last refreshMs of updates. After
+ * each iteration the pool's hit rate, evictions per second, open and close
+ * latency, open indexes, their estimated cost and the used heap are printed.
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 2, time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 30, timeUnit = TimeUnit.SECONDS)
+@Timeout(time = 30, timeUnit = TimeUnit.MINUTES)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MultiTenantBenchmark {
+
+    private static final int TOP_N = 10;
+    private static final int POOL_SIZE = 1000;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class TenantCounters {
+        public long searches;
+        public long updates;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            searches = 0;
+            updates = 0;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static abstract class AbstractTenantState {
+        protected Database db;
+        private final long seed = Long.getLong("seed", 42L);
+        private final int docsPerTenant = Integer.getInteger("docsPerTenant", 100);
+        private Path root;
+        private IndexPool pool;
+        private Zipfian tenantChoice;
+        private QueryWorkload workload;
+        private long iterationStart;
+        private long hits;
+        private long misses;
+        private long evictions;
+
+        @Param({ "10", "100", "1000", "10000" })
+        int tenants;
+
+        @Param({ "100" })
+        int maxOpen;
+
+        @Param({ "256" })
+        long budgetMB;
+
+        @Param({ "0.99" })
+        double skew;
+
+        @Param({ "0.1" })
+        double writes;
+
+        @Param({ "1000" })
+        long refreshMs;
+
+        public abstract Directory getDirectory(final Path path) throws IOException;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            root = generateTestPath();
+            final long start = System.nanoTime();
+            try (final DocumentGenerator documents = DocumentGenerator.create("linedocs", seed, DocSize.MEDIAN)) {
+                for (int i = 0; i < tenants; i++) {
+                    try (final Directory dir = getDirectory(tenantPath(i))) {
+                        cleanDirectory(dir);
+                        try (final IndexWriter writer = new IndexWriter(dir, indexWriterConfig())) {
+                            // tenant i holds the documents numbered from i * docsPerTenant
+                            for (int j = 0; j < docsPerTenant; j++) {
+                                writer.addDocument(documents.next());
+                            }
+                        }
+                        if (i == 0) {
+                            try (final DirectoryReader reader = DirectoryReader.open(dir)) {
+                                workload = QueryWorkload.build(reader, seed, POOL_SIZE);
+                            }
+                        }
+                    }
+                }
+            }
+            System.out.println(String.format("built %d tenants of %d docs in %.1f s", tenants, docsPerTenant,
+                    (System.nanoTime() - start) / 1e9));
+
+            pool = new IndexPool(name -> getDirectory(root.resolve(name)), this::indexWriterConfig, maxOpen,
+                    budgetMB * 1024 * 1024, refreshMs);
+            tenantChoice = new Zipfian(tenants, skew);
+        }
+
+        @Setup(Level.Iteration)
+        public void resetMetrics() {
+            iterationStart = System.nanoTime();
+            hits = pool.hits();
+            misses = pool.misses();
+            evictions = pool.evictions();
+            pool.openLatency();
+            pool.closeLatency();
+        }
+
+        @TearDown(Level.Iteration)
+        public void report() {
+            final double seconds = (System.nanoTime() - iterationStart) / 1e9;
+            final long hitCount = pool.hits() - hits;
+            final long missCount = pool.misses() - misses;
+            final Histogram opens = pool.openLatency();
+            final Histogram closes = pool.closeLatency();
+            System.out.println(String.format(
+                    "hit rate %.1f%%, %.1f evictions/sec, open ms p50 %.1f p99 %.1f max %.1f,"
+                            + " close ms p50 %.1f p99 %.1f max %.1f, %d open costing %.1f MB, heap %.1f MB",
+                    100.0 * hitCount / Math.max(1, hitCount + missCount),
+                    (pool.evictions() - evictions) / seconds,
+                    millis(opens.getValueAtPercentile(50)), millis(opens.getValueAtPercentile(99)),
+                    millis(opens.getMaxValue()),
+                    millis(closes.getValueAtPercentile(50)), millis(closes.getValueAtPercentile(99)),
+                    millis(closes.getMaxValue()),
+                    pool.openCount(), pool.cost() / 1048576.0, usedHeap() / 1048576.0));
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() throws Exception {
+            pool.close();
+            for (int i = 0; i < tenants; i++) {
+                try (final Directory dir = getDirectory(tenantPath(i))) {
+                    cleanDirectory(dir);
+                }
+            }
+        }
+
+        long operate(final TenantWorker worker, final TenantCounters counters) throws IOException {
+            final Random random = worker.random;
+            final int tenant = (int) tenantChoice.nextScrambled(random);
+            try (final IndexPool.Lease lease = pool.acquire(tenantName(tenant))) {
+                if (random.nextDouble() < writes) {
+                    final String id = "doc-" + ((long) tenant * docsPerTenant + random.nextInt(docsPerTenant));
+                    counters.updates++;
+                    return lease.writer().updateDocument(new Term("_id", id), worker.next(id));
+                }
+                counters.searches++;
+                return lease.searcher().search(workload.query(QueryClass.TERM, Frequency.MEDIUM, worker.index++),
+                        TOP_N).totalHits.value;
+            }
+        }
+
+        private Path tenantPath(final int tenant) {
+            return root.resolve(tenantName(tenant));
+        }
+
+        private static String tenantName(final int tenant) {
+            return String.format("tenant-%05d", tenant);
+        }
+
+        private IndexWriterConfig indexWriterConfig() {
+            final IndexWriterConfig config = new IndexWriterConfig();
+            config.setUseCompoundFile(false);
+            config.setCodec(new Lucene80Codec());
+            // thousands of writers cannot each buffer the default 16 MB
+            config.setRAMBufferSizeMB(1);
+            return config;
+        }
+
+        private static void cleanDirectory(final Directory dir) throws IOException {
+            for (final String name : dir.listAll()) {
+                dir.deleteFile(name);
+            }
+        }
+
+        private Path generateTestPath() {
+            final String dir = System.getProperty("dir");
+            if (dir == null) {
+                throw new Error("System property 'dir' not set.");
+            }
+            final FileSystem fileSystem = FileSystems.getDefault();
+            return fileSystem.getPath(dir);
+        }
+
+        private static long usedHeap() {
+            System.gc();
+            final Runtime runtime = Runtime.getRuntime();
+            return runtime.totalMemory() - runtime.freeMemory();
+        }
+
+        private static double millis(final long nanos) {
+            return nanos / 1000000.0;
+        }
+    }
+
+    public static class FDBTenantState extends AbstractTenantState {
+
+        @Param({ "10000" })
+        int pageSize;
+
+        @Param({ "10" })
+        int pagesPerTxn;
+
+        @Override
+        public void setup() throws Exception {
+            FDB.selectAPIVersion(600);
+            db = FDB.instance().open();
+            super.setup();
+        }
+
+        @Override
+        public void teardown() throws Exception {
+            super.teardown();
+            db.close();
+        }
+
+        @Override
+        public Directory getDirectory(final Path path) throws IOException {
+            return FDBDirectory.open(db, path, pageSize, pageSize * pagesPerTxn);
+        }
+    }
+
+    public static class NIOFSTenantState extends AbstractTenantState {
+
+        @Override
+        public Directory getDirectory(final Path path) throws IOException {
+            return new NIOFSDirectory(path);
+        }
+    }
+
+    /**
+     * Each thread's random choices and new revisions.
+     */
+    @State(Scope.Thread)
+    public static class TenantWorker {
+        private final long seed = Long.getLong("seed", 42L);
+        private Random random;
+        private DocumentGenerator documents;
+        private int index;
+
+        @Setup(Level.Trial)
+        public void setup(final ThreadParams threads) throws IOException {
+            random = new Random(seed + threads.getThreadIndex());
+            documents = DocumentGenerator.create("linedocs", seed + 1, DocSize.MEDIAN,
+                    threads.getThreadIndex(), threads.getThreadCount());
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() throws IOException {
+            documents.close();
+        }
+
+        /**
+         * @return the next generated document, with its _id replaced.
+         */
+        Document next(final String id) throws IOException {
+            final Document doc = documents.next();
+            ((Field) doc.getField("_id")).setStringValue(id);
+            return doc;
+        }
+    }
+
+    @Benchmark
+    public long operateFDB(final FDBTenantState state, final TenantWorker worker, final TenantCounters counters)
+            throws IOException {
+        return state.operate(worker, counters);
+    }
+
+    @Benchmark
+    public long operateNIOFS(final NIOFSTenantState state, final TenantWorker worker,
+            final TenantCounters counters) throws IOException {
+        return state.operate(worker, counters);
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        final Options opt = new OptionsBuilder().include(MultiTenantBenchmark.class.getSimpleName()).build();
+        new Runner(opt).run();
+    }
+
+}
@@ -0,0 +1,303 @@
+package com.cloudant.fdblucene.benchmark;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.apache.lucene.codecs.lucene80.Lucene80Codec;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.apache.lucene.util.LineFileDocs;
+import org.apache.lucene.util.LuceneTestCase;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Timeout;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.apple.foundationdb.Database;
+import com.apple.foundationdb.FDB;
+import com.cloudant.fdblucene.FDBDirectory;
+
+/**
+ * Search while indexing: writer and searcher threads share one IndexWriter
+ * and a SearcherManager refreshed on a fixed interval. JMH reports indexing
+ * and search throughput per group member; refresh latency and the lag until
+ * a new document is visible are printed after each iteration.
+ *
+ * Change the writer and searcher thread counts with -tg writers,searchers.
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 2, time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 1, timeUnit = TimeUnit.MINUTES)
+@Timeout(time = 15, timeUnit = TimeUnit.MINUTES)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class NearRealTimeBenchmark {
+
+    private static final int WRITE_TIMES = 1 << 20;
+
+    @State(Scope.Group)
+    public static abstract class AbstractNRTState {
+        protected Database db;
+        private Directory dir;
+        private IndexWriter writer;
+        private SearcherManager manager;
+        private ScheduledExecutorService refresher;
+        private LineFileDocs lineFileDocs;
+        private Query[] searchQueries;
+
+        private final AtomicLong reserved = new AtomicLong();
+        private final AtomicLong added = new AtomicLong();
+        private final AtomicLongArray writeTimes = new AtomicLongArray(WRITE_TIMES);
+        private volatile long lastVisible;
+        private final Recorder refreshLatency = new Recorder(3);
+        private final Recorder visibilityLag = new Recorder(3);
+        // a throwing scheduled task is silently never run again
+        private final AtomicReference<Exception> refreshFailure = new AtomicReference<>();
+
+        @Param({ "100", "1000" })
+        private long refreshIntervalMs;
+
+        public abstract Directory getDirectory(final Path path) throws IOException;
+
+        public void setup() throws Exception {
+            dir = getDirectory(generateTestPath());
+            cleanDirectory();
+            final long seed = Long.getLong("seed", 42L);
+            final BenchmarkCorpus corpus = BenchmarkCorpus.open(100000, seed, 1000);
+            corpus.copyTo(dir);
+            final List<String> searchTerms = corpus.getSearchTerms();
+            searchQueries = new Query[searchTerms.size()];
+            for (int i = 0; i < searchQueries.length; i++) {
+                searchQueries[i] = new TermQuery(new Term("body", searchTerms.get(i)));
+            }
+            lineFileDocs = new LineFileDocs(new Random(seed + 1), LuceneTestCase.DEFAULT_LINE_DOCS_FILE);
+
+            writer = new IndexWriter(dir, indexWriterConfig());
+            manager = new SearcherManager(writer, null);
+            refresher = Executors.newSingleThreadScheduledExecutor();
+            refresher.scheduleWithFixedDelay(this::refresh, refreshIntervalMs, refreshIntervalMs,
+                    TimeUnit.MILLISECONDS);
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() throws Exception {
+            refresher.shutdown();
+            refresher.awaitTermination(1, TimeUnit.MINUTES);
+            manager.close();
+            writer.close();
+            lineFileDocs.close();
+            cleanDirectory();
+            dir.close();
+        }
+
+        @TearDown(Level.Iteration)
+        public void report() throws IOException {
+            checkRefresh();
+            final Histogram refresh = refreshLatency.getIntervalHistogram();
+            final Histogram lag = visibilityLag.getIntervalHistogram();
+            System.out.println(String.format(
+                    "refreshes %d, refresh ms p50 %.1f p99 %.1f max %.1f, visibility lag ms p50 %.1f p99 %.1f max %.1f",
+                    refresh.getTotalCount(),
+                    millis(refresh.getValueAtPercentile(50)),
+                    millis(refresh.getValueAtPercentile(99)),
+                    millis(refresh.getMaxValue()),
+                    millis(lag.getValueAtPercentile(50)),
+                    millis(lag.getValueAtPercentile(99)),
+                    millis(lag.getMaxValue())));
+        }
+
+        long index(final WriterState state) throws IOException {
+            final Document doc = lineFileDocs.nextDoc();
+            if (doc.getField("_id") != state.idField) {
+                doc.removeFields("_id");
+                doc.add(state.idField);
+            }
+            state.idField.setStringValue("nrt-" + Thread.currentThread().getId() + "-" + state.count++);
+            final long result = writer.addDocument(doc);
+            final long seq = reserved.incrementAndGet();
+            writeTimes.set((int) (seq & (WRITE_TIMES - 1)), System.nanoTime());
+            // publish in order, so every seq a refresh reads has its time written
+            while (!added.compareAndSet(seq - 1, seq)) {
+                Thread.yield();
+            }
+            return result;
+        }
+
+        long search() throws IOException {
+            checkRefresh();
+            final Query query = searchQueries[ThreadLocalRandom.current().nextInt(searchQueries.length)];
+            final IndexSearcher searcher = manager.acquire();
+            try {
+                return searcher.search(query, 50).totalHits.value;
+            } finally {
+                manager.release(searcher);
+            }
+        }
+
+        private void refresh() {
+            try {
+                final long target = added.get();
+                final long start = System.nanoTime();
+                manager.maybeRefreshBlocking();
+                final long end = System.nanoTime();
+                refreshLatency.recordValue(end - start);
+                if (target > lastVisible) {
+                    // the oldest document this refresh made visible waited longest
+                    final long written = writeTimes.get((int) ((lastVisible + 1) & (WRITE_TIMES - 1)));
+                    if (written != 0 && written < end) {
+                        visibilityLag.recordValue(end - written);
+                    }
+                    lastVisible = target;
+                }
+            } catch (final Exception e) {
+                refreshFailure.compareAndSet(null, e);
+            }
+        }
+
+        private void checkRefresh() throws IOException {
+            final Exception e = refreshFailure.get();
+            if (e != null) {
+                throw new IOException("Refresh failed.", e);
+            }
+        }
+
+        private void cleanDirectory() throws IOException {
+            for (final String name : dir.listAll()) {
+                dir.deleteFile(name);
+            }
+        }
+
+        private Path generateTestPath() {
+            final String dir = System.getProperty("dir");
+            if (dir == null) {
+                throw new Error("System property 'dir' not set.");
+            }
+            final FileSystem fileSystem = FileSystems.getDefault();
+            return fileSystem.getPath(dir);
+        }
+
+        private IndexWriterConfig indexWriterConfig() {
+            final IndexWriterConfig config = new IndexWriterConfig();
+            config.setUseCompoundFile(false);
+            config.setCodec(new Lucene80Codec());
+            return config;
+        }
+
+        private static double millis(final long nanos) {
+            return nanos / 1000000.0;
+        }
+    }
+
+    public static class FDBNRTState extends AbstractNRTState {
+
+        @Setup(Level.Trial)
+        public void startFDBNetworking() throws Exception {
+            FDB.selectAPIVersion(600);
+            db = FDB.instance().open();
+            super.setup();
+        }
+
+        @TearDown(Level.Trial)
+        public void closeFDB() {
+            db.close();
+        }
+
+        @Override
+        public Directory getDirectory(final Path path) throws IOException {
+            return FDBDirectory.open(db, path);
+        }
+    }
+
+    public static class NIOFSNRTState extends AbstractNRTState {
+
+        @Setup(Level.Trial)
+        public void setupNIOFS() throws Exception {
+            super.setup();
+        }
+
+        @Override
+        public Directory getDirectory(final Path path) throws IOException {
+            return new NIOFSDirectory(path);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class WriterState {
+        private final StringField idField = new StringField("_id", "", Store.YES);
+        private long count;
+    }
+
+    @Benchmark
+    @Group("fdb")
+    @GroupThreads(1)
+    public long indexFDB(final FDBNRTState state, final WriterState writer) throws Exception {
+        return state.index(writer);
+    }
+
+    @Benchmark
+    @Group("fdb")
+    @GroupThreads(3)
+    public long searchFDB(final FDBNRTState state) throws Exception {
+        return state.search();
+    }
+
+    @Benchmark
+    @Group("niofs")
+    @GroupThreads(1)
+    public long indexNIOFS(final NIOFSNRTState state, final WriterState writer) throws Exception {
+        return state.index(writer);
+    }
+
+    @Benchmark
+    @Group("niofs")
+    @GroupThreads(3)
+    public long searchNIOFS(final NIOFSNRTState state) throws Exception {
+        return state.search();
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        final Options opt = new OptionsBuilder().include(NearRealTimeBenchmark.class.getSimpleName()).build();
+        new Runner(opt).run();
+    }
+
+}
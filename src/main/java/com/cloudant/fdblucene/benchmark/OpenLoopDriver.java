@@ -0,0 +1,123 @@
+package com.cloudant.fdblucene.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Issue operations on a fixed schedule regardless of how long earlier ones
+ * took, and record latency from when each operation should have started.
+ *
+ * Measuring from the intended start rather than the actual one means a stall
+ * is charged to every operation queued behind it, avoiding coordinated
+ * omission. Only successful operations are recorded; failures are counted
+ * separately.
+ *
+ */
+public final class OpenLoopDriver {
+
+    public interface Operation {
+        void run() throws Exception;
+    }
+
+    public static final class Result {
+        public final double targetRate;
+        public final double achievedRate;
+        public final Histogram latency;
+        public final Histogram serviceTime;
+        public final long errors;
+
+        private Result(final double targetRate, final double achievedRate, final Histogram latency,
+                final Histogram serviceTime, final long errors) {
+            this.targetRate = targetRate;
+            this.achievedRate = achievedRate;
+            this.latency = latency;
+            this.serviceTime = serviceTime;
+            this.errors = errors;
+        }
+
+        public static String header() {
+            return String.format("%10s %10s %10s %10s %10s %10s %10s %10s %8s",
+                    "target/s", "actual/s", "p50 us", "p90 us", "p99 us", "p999 us", "max us", "svc p99", "errors");
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%10.0f %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f %8d",
+                    targetRate,
+                    achievedRate,
+                    micros(latency.getValueAtPercentile(50)),
+                    micros(latency.getValueAtPercentile(90)),
+                    micros(latency.getValueAtPercentile(99)),
+                    micros(latency.getValueAtPercentile(99.9)),
+                    micros(latency.getMaxValue()),
+                    micros(serviceTime.getValueAtPercentile(99)),
+                    errors);
+        }
+
+        private static double micros(final long nanos) {
+            return nanos / 1000.0;
+        }
+    }
+
+    private final int threads;
+
+    /**
+     * @param threads the number of operations that may be in flight at once.
+     */
+    public OpenLoopDriver(final int threads) {
+        this.threads = threads;
+    }
+
+    public Result run(final Operation operation, final double ratePerSecond, final long duration,
+            final TimeUnit unit) throws InterruptedException {
+        final double intervalNanos = TimeUnit.SECONDS.toNanos(1) / ratePerSecond;
+        final long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(10);
+        final long end = start + unit.toNanos(duration);
+        final AtomicLong next = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        final Recorder latency = new Recorder(3);
+        final Recorder serviceTime = new Recorder(3);
+
+        final Thread[] workers = new Thread[threads];
+        for (int t = 0; t < workers.length; t++) {
+            workers[t] = new Thread(() -> {
+                while (true) {
+                    final long intended = start + (long) (next.getAndIncrement() * intervalNanos);
+                    if (intended >= end) {
+                        return;
+                    }
+                    long now;
+                    while ((now = System.nanoTime()) < intended) {
+                        LockSupport.parkNanos(intended - now);
+                    }
+                    try {
+                        operation.run();
+                    } catch (final Exception e) {
+                        // a fast failure would flatter the percentiles
+                        errors.incrementAndGet();
+                        continue;
+                    }
+                    final long done = System.nanoTime();
+                    latency.recordValue(done - intended);
+                    serviceTime.recordValue(done - now);
+                }
+            }, "open-loop-" + t);
+            workers[t].start();
+        }
+        for (final Thread worker : workers) {
+            worker.join();
+        }
+        final long elapsed = System.nanoTime() - start;
+
+        final Histogram latencyHistogram = latency.getIntervalHistogram();
+        final double achieved = (latencyHistogram.getTotalCount() + errors.get())
+                / (elapsed / (double) TimeUnit.SECONDS.toNanos(1));
+        return new Result(ratePerSecond, achieved, latencyHistogram, serviceTime.getIntervalHistogram(),
+                errors.get());
+    }
+
+}
@@ -0,0 +1,317 @@
+package com.cloudant.fdblucene.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.DoublePoint;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.WildcardQuery;
+
+/**
+ * Pools of queries over the benchmark corpus, grouped by the index access
+ * pattern they exercise and by how common their terms are.
+ *
+ * Terms and phrases are sampled from analyzed bodies of random documents and
+ * split into thirds by document frequency. Queries are built up front so the
+ * benchmark loop only picks one.
+ *
+ */
+public final class QueryWorkload {
+
+    public enum QueryClass {
+        /** A single TermQuery on body. */
+        TERM,
+        /** Two required terms. */
+        AND,
+        /** Three optional terms. */
+        OR,
+        /** Two adjacent terms, reading positions. */
+        PHRASE,
+        /** A short prefix, walking the terms dictionary. */
+        PREFIX,
+        /** A wildcard with a fixed prefix and suffix. */
+        WILDCARD,
+        /** A DoublePoint range on the value field. */
+        RANGE,
+        /** A TermQuery sorted by the value doc values. */
+        SORTED,
+        /** A TermQuery that also loads the stored fields of every hit. */
+        STORED
+    }
+
+    public enum Frequency {
+        HIGH, MEDIUM, LOW
+    }
+
+    private static final String FIELD = "body";
+    private static final int SAMPLE_DOCS = 1000;
+    private static final double VALUE_RANGE = 1000.0;
+
+    private final Map<QueryClass, Map<Frequency, Query[]>> queries = new EnumMap<>(QueryClass.class);
+    private final Sort sort = new Sort(new SortField(BenchmarkCorpus.VALUE_FIELD, SortField.Type.DOUBLE));
+
+    private QueryWorkload() {
+    }
+
+    /**
+     * Sample terms from reader and build poolSize queries for every class and
+     * frequency.
+     */
+    public static QueryWorkload build(final IndexReader reader, final long seed, final int poolSize)
+            throws IOException {
+        final Random random = new Random(seed);
+        final List<List<String>> phrases = new ArrayList<>();
+        final Set<String> terms = new LinkedHashSet<>();
+        try (final Analyzer analyzer = new StandardAnalyzer()) {
+            for (int i = 0; i < SAMPLE_DOCS; i++) {
+                final String body = reader.document(random.nextInt(reader.maxDoc())).get(FIELD);
+                if (body == null) {
+                    continue;
+                }
+                final List<String> tokens = analyze(analyzer, body);
+                terms.addAll(tokens);
+                if (tokens.size() > 1) {
+                    final int start = random.nextInt(tokens.size() - 1);
+                    phrases.add(tokens.subList(start, start + 2));
+                }
+            }
+        }
+
+        final Map<String, Integer> docFreqs = new HashMap<>();
+        for (final String term : terms) {
+            docFreqs.put(term, reader.docFreq(new Term(FIELD, term)));
+        }
+        if (terms.size() < Frequency.values().length) {
+            throw new IOException("Too few terms in the index to build a query workload.");
+        }
+        final List<String> byDocFreq = new ArrayList<>(terms);
+        Collections.sort(byDocFreq, Comparator.comparing(docFreqs::get).reversed());
+        final int highCount = byDocFreq.size() / 3;
+        final int lowStart = byDocFreq.size() * 2 / 3;
+        final int highCutoff = docFreqs.get(byDocFreq.get(highCount - 1));
+        final int lowCutoff = docFreqs.get(byDocFreq.get(lowStart));
+
+        final Map<Frequency, List<String>> termBuckets = new EnumMap<>(Frequency.class);
+        final Map<Frequency, List<List<String>>> phraseBuckets = new EnumMap<>(Frequency.class);
+        for (final Frequency frequency : Frequency.values()) {
+            termBuckets.put(frequency, new ArrayList<>());
+            phraseBuckets.put(frequency, new ArrayList<>());
+        }
+        // split terms by rank so no bucket is empty when many share a frequency
+        termBuckets.get(Frequency.HIGH).addAll(byDocFreq.subList(0, highCount));
+        termBuckets.get(Frequency.MEDIUM).addAll(byDocFreq.subList(highCount, lowStart));
+        termBuckets.get(Frequency.LOW).addAll(byDocFreq.subList(lowStart, byDocFreq.size()));
+        for (final List<String> phrase : phrases) {
+            final int docFreq = Math.min(docFreqs.get(phrase.get(0)), docFreqs.get(phrase.get(1)));
+            phraseBuckets.get(bucket(docFreq, highCutoff, lowCutoff)).add(phrase);
+        }
+
+        final QueryWorkload result = new QueryWorkload();
+        for (final QueryClass queryClass : QueryClass.values()) {
+            final Map<Frequency, Query[]> pools = new EnumMap<>(Frequency.class);
+            for (final Frequency frequency : Frequency.values()) {
+                final List<String> bucketTerms = termBuckets.get(frequency);
+                List<List<String>> bucketPhrases = phraseBuckets.get(frequency);
+                if (bucketPhrases.isEmpty()) {
+                    bucketPhrases = phrases;
+                }
+                final Query[] pool = new Query[poolSize];
+                for (int i = 0; i < poolSize; i++) {
+                    pool[i] = newQuery(queryClass, frequency, bucketTerms, bucketPhrases, random);
+                }
+                pools.put(frequency, pool);
+            }
+            result.queries.put(queryClass, pools);
+        }
+        return result;
+    }
+
+    public Query query(final QueryClass queryClass, final Frequency frequency, final int index) {
+        final Query[] pool = queries.get(queryClass).get(frequency);
+        return pool[(index & Integer.MAX_VALUE) % pool.length];
+    }
+
+    /**
+     * @return the distinct queries of a pool, in pool order.
+     */
+    public Query[] distinct(final QueryClass queryClass, final Frequency frequency) {
+        final Set<Query> result = new LinkedHashSet<>(Arrays.asList(queries.get(queryClass).get(frequency)));
+        return result.toArray(new Query[result.size()]);
+    }
+
+    /**
+     * Run query the way its class is meant to be run.
+     *
+     * @return the total hit count, plus the characters loaded for STORED.
+     */
+    public long execute(final IndexSearcher searcher, final QueryClass queryClass, final Query query,
+            final int topN) throws IOException {
+        switch (queryClass) {
+        case SORTED:
+            return searcher.search(query, topN, sort).totalHits.value;
+        case STORED: {
+            final TopDocs topDocs = searcher.search(query, topN);
+            long result = topDocs.totalHits.value;
+            for (final ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                final String body = searcher.doc(scoreDoc.doc).get(FIELD);
+                result += body == null ? 0 : body.length();
+            }
+            return result;
+        }
+        default:
+            return searcher.search(query, topN).totalHits.value;
+        }
+    }
+
+    private static Query newQuery(
+            final QueryClass queryClass,
+            final Frequency frequency,
+            final List<String> terms,
+            final List<List<String>> phrases,
+            final Random random) {
+        switch (queryClass) {
+        case TERM:
+        case SORTED:
+        case STORED:
+            return new TermQuery(new Term(FIELD, pick(terms, random)));
+        case AND:
+            return new BooleanQuery.Builder()
+                    .add(new TermQuery(new Term(FIELD, pick(terms, random))), Occur.MUST)
+                    .add(new TermQuery(new Term(FIELD, pick(terms, random))), Occur.MUST)
+                    .build();
+        case OR:
+            return new BooleanQuery.Builder()
+                    .add(new TermQuery(new Term(FIELD, pick(terms, random))), Occur.SHOULD)
+                    .add(new TermQuery(new Term(FIELD, pick(terms, random))), Occur.SHOULD)
+                    .add(new TermQuery(new Term(FIELD, pick(terms, random))), Occur.SHOULD)
+                    .build();
+        case PHRASE: {
+            final List<String> phrase = pick(phrases, random);
+            return new PhraseQuery(FIELD, phrase.toArray(new String[phrase.size()]));
+        }
+        case PREFIX: {
+            final String term = pick(terms, random);
+            return new PrefixQuery(new Term(FIELD, term.substring(0, Math.min(3, term.length()))));
+        }
+        case WILDCARD: {
+            final String term = pick(terms, random);
+            if (term.length() < 3) {
+                return new WildcardQuery(new Term(FIELD, term + "*"));
+            }
+            return new WildcardQuery(new Term(FIELD, term.substring(0, 2) + "*" + term.charAt(term.length() - 1)));
+        }
+        case RANGE: {
+            final double width = rangeWidth(frequency);
+            final double lower = random.nextDouble() * (VALUE_RANGE - width);
+            return DoublePoint.newRangeQuery(BenchmarkCorpus.VALUE_FIELD, lower, lower + width);
+        }
+        default:
+            throw new IllegalArgumentException(queryClass.toString());
+        }
+    }
+
+    private static double rangeWidth(final Frequency frequency) {
+        switch (frequency) {
+        case HIGH:
+            return VALUE_RANGE / 10;
+        case MEDIUM:
+            return VALUE_RANGE / 100;
+        default:
+            return VALUE_RANGE / 10000;
+        }
+    }
+
+    private static Frequency bucket(final int docFreq, final int highCutoff, final int lowCutoff) {
+        if (docFreq >= highCutoff) {
+            return Frequency.HIGH;
+        }
+        return docFreq > lowCutoff ? Frequency.MEDIUM : Frequency.LOW;
+    }
+
+    private static <T> T pick(final List<T> list, final Random random) {
+        return list.get(random.nextInt(list.size()));
+    }
+
+    private static List<String> analyze(final Analyzer analyzer, final String text) throws IOException {
+        final List<String> result = new ArrayList<>();
+        try (final TokenStream tokens = analyzer.tokenStream(FIELD, text)) {
+            final CharTermAttribute term = tokens.addAttribute(CharTermAttribute.class);
+            tokens.reset();
+            while (tokens.incrementToken()) {
+                result.add(term.toString());
+            }
+            tokens.end();
+        }
+        return result;
+    }
+
+    /**
+     * Weighted choice of query class, configured as a comma separated list of
+     * class:weight pairs, for example "term:50,phrase:10,range:5".
+     */
+    public static final class Mix {
+        private final QueryClass[] classes;
+        private final int[] cumulativeWeights;
+
+        public Mix(final String spec) {
+            final String[] entries = spec.split(",");
+            classes = new QueryClass[entries.length];
+            cumulativeWeights = new int[entries.length];
+            int total = 0;
+            for (int i = 0; i < entries.length; i++) {
+                final String[] entry = entries[i].trim().split(":");
+                if (entry.length != 2) {
+                    throw new IllegalArgumentException("Bad query mix entry: " + entries[i]);
+                }
+                classes[i] = QueryClass.valueOf(entry[0].trim().toUpperCase(Locale.ROOT));
+                final int weight = Integer.parseInt(entry[1].trim());
+                if (weight < 0) {
+                    throw new IllegalArgumentException("Negative query mix weight: " + entries[i]);
+                }
+                total += weight;
+                cumulativeWeights[i] = total;
+            }
+            if (total <= 0) {
+                throw new IllegalArgumentException("Query mix has no weight: " + spec);
+            }
+        }
+
+        public QueryClass next(final Random random) {
+            final int choice = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+            for (int i = 0; i < cumulativeWeights.length; i++) {
+                if (choice < cumulativeWeights[i]) {
+                    return classes[i];
+                }
+            }
+            throw new AssertionError();
+        }
+    }
+
+}
@@ -0,0 +1,148 @@
+package com.cloudant.fdblucene.benchmark;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Timeout;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.cloudant.fdblucene.benchmark.QueryWorkload.Frequency;
+import com.cloudant.fdblucene.benchmark.QueryWorkload.QueryClass;
+
+/**
+ * Search throughput per query class and term frequency. queryClass=MIX picks
+ * a class per search using the weights in the queryMix system property and
+ * prints the mean latency of each class after every iteration.
+ *
+ */
+public class QueryWorkloadBenchmark {
+
+    private static final int POOL_SIZE = 1024;
+    private static final String DEFAULT_MIX =
+            "term:30,and:15,or:15,phrase:10,prefix:5,wildcard:5,range:10,sorted:5,stored:5";
+
+    @State(Scope.Benchmark)
+    public static abstract class WorkloadState {
+
+        @Param({ "TERM", "AND", "OR", "PHRASE", "PREFIX", "WILDCARD", "RANGE", "SORTED", "STORED", "MIX" })
+        public String queryClass;
+
+        @Param({ "HIGH", "MEDIUM", "LOW" })
+        public String frequency;
+
+        private QueryWorkload workload;
+        private QueryClass fixedClass;
+        private Frequency fixedFrequency;
+        private QueryWorkload.Mix mix;
+        private Random random;
+        private int next;
+        private final long[] classNanos = new long[QueryClass.values().length];
+        private final long[] classCounts = new long[QueryClass.values().length];
+
+        protected void setupWorkload(final SearchSetup setup) throws IOException {
+            try (final DirectoryReader reader = DirectoryReader.open(setup.dir)) {
+                workload = QueryWorkload.build(reader, setup.seed, POOL_SIZE);
+            }
+            fixedFrequency = Frequency.valueOf(frequency);
+            if ("MIX".equals(queryClass)) {
+                mix = new QueryWorkload.Mix(System.getProperty("queryMix", DEFAULT_MIX));
+            } else {
+                fixedClass = QueryClass.valueOf(queryClass);
+            }
+            random = new Random(setup.seed);
+        }
+
+        public long search(final IndexSearcher searcher, final int topN) throws IOException {
+            final int index = next++;
+            if (mix == null) {
+                return workload.execute(searcher, fixedClass,
+                        workload.query(fixedClass, fixedFrequency, index), topN);
+            }
+            final QueryClass chosen = mix.next(random);
+            final long start = System.nanoTime();
+            final long result = workload.execute(searcher, chosen,
+                    workload.query(chosen, fixedFrequency, index), topN);
+            classNanos[chosen.ordinal()] += System.nanoTime() - start;
+            classCounts[chosen.ordinal()]++;
+            return result;
+        }
+
+        @TearDown(Level.Iteration)
+        public void reportMix() {
+            if (mix == null) {
+                return;
+            }
+            for (final QueryClass each : QueryClass.values()) {
+                final int i = each.ordinal();
+                if (classCounts[i] > 0) {
+                    System.out.println(String.format("%-8s %10d queries %12.1f us/query",
+                            each, classCounts[i], classNanos[i] / 1000.0 / classCounts[i]));
+                }
+                classNanos[i] = 0;
+                classCounts[i] = 0;
+            }
+        }
+    }
+
+    public static class FDBWorkload extends WorkloadState {
+        @Setup(Level.Trial)
+        public void setup(final FDBSearchSetup setup) throws IOException {
+            setupWorkload(setup);
+        }
+    }
+
+    public static class NIOSWorkload extends WorkloadState {
+        @Setup(Level.Trial)
+        public void setup(final NIOSSearchSetup setup) throws IOException {
+            setupWorkload(setup);
+        }
+    }
+
+    @BenchmarkMode(Mode.Throughput)
+    @Fork(1)
+    @Warmup(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+    @Measurement(iterations = 3, time = 1, timeUnit = TimeUnit.MINUTES)
+    @Timeout(time = 15, timeUnit = TimeUnit.MINUTES)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Benchmark
+    public long searchFDB(final FDBSearchSetup setup, final FDBWorkload workload) throws Exception {
+        return workload.search(setup.searcher, setup.topNDocs);
+    }
+
+    @BenchmarkMode(Mode.Throughput)
+    @Fork(1)
+    @Warmup(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+    @Measurement(iterations = 3, time = 1, timeUnit = TimeUnit.MINUTES)
+    @Timeout(time = 15, timeUnit = TimeUnit.MINUTES)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Benchmark
+    public long searchNIOS(final NIOSSearchSetup setup, final NIOSWorkload workload) throws Exception {
+        return workload.search(setup.searcher, setup.topNDocs);
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        final Options opt = new OptionsBuilder().include(QueryWorkloadBenchmark.class.getSimpleName()).build();
+        new Runner(opt).run();
+    }
+
+}
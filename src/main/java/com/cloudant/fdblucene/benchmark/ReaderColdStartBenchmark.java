@@ -0,0 +1,278 @@
+package com.cloudant.fdblucene.benchmark;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Timeout;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.apple.foundationdb.Database;
+import com.apple.foundationdb.FDB;
+import com.cloudant.fdblucene.FDBDirectory;
+
+/**
+ * What a search node pays after a restart: every iteration opens a fresh
+ * Directory, so nothing cached by the previous one survives, and times one
+ * phase of bringing a reader into service.
+ *
+ * <ul>
+ * <li>open: DirectoryReader.open.</li>
+ * <li>warm: preloading the body terms used by searches and all norms.</li>
+ * <li>firstQuery, firstQueryWarmed: the first search, without and after
+ * warming.</li>
+ * <li>steadyState, steadyStateWarmed: searching until two consecutive
+ * windows of STEADY_WINDOW queries have mean latencies within 10%.</li>
+ * </ul>
+ *
+ * Only the Directory is reopened; NIOFSDirectory still benefits from the
+ * operating system page cache.
+ *
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Timeout(time = 15, timeUnit = TimeUnit.MINUTES)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ReaderColdStartBenchmark {
+
+    private static final int STEADY_WINDOW = 50;
+    private static final int MAX_WINDOWS = 200;
+
+    @State(Scope.Benchmark)
+    public static abstract class ColdStartState {
+
+        @Param({ "10000", "100000" })
+        public int docs;
+
+        @Param({ "1", "10", "50" })
+        public int segments;
+
+        @Param({ "open", "warm", "firstQuery", "firstQueryWarmed", "steadyState", "steadyStateWarmed" })
+        public String phase;
+
+        protected Database db;
+        private final long seed = Long.getLong("seed", 42L);
+        private Path path;
+        private Directory dir;
+        private DirectoryReader reader;
+        private List<String> searchTerms;
+        private Query[] searchQueries;
+        private Random random;
+
+        public abstract Directory getDirectory(final Path path) throws IOException;
+
+        public void setup() throws Exception {
+            path = generateTestPath();
+            try (final Directory dir = getDirectory(path)) {
+                cleanDirectory(dir);
+                final BenchmarkCorpus corpus = BenchmarkCorpus.open(docs, seed, 1000);
+                corpus.copyTo(dir, segments);
+                searchTerms = corpus.getSearchTerms();
+            }
+            searchQueries = new Query[searchTerms.size()];
+            for (int i = 0; i < searchQueries.length; i++) {
+                searchQueries[i] = new TermQuery(new Term("body", searchTerms.get(i)));
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() throws Exception {
+            try (final Directory dir = getDirectory(path)) {
+                cleanDirectory(dir);
+            }
+        }
+
+        @Setup(Level.Iteration)
+        public void prepare() throws IOException {
+            dir = getDirectory(path);
+            random = new Random(seed);
+            if (!"open".equals(phase)) {
+                reader = DirectoryReader.open(dir);
+            }
+            if (phase.endsWith("Warmed")) {
+                warm(reader);
+            }
+        }
+
+        @TearDown(Level.Iteration)
+        public void close() throws IOException {
+            if (reader != null) {
+                reader.close();
+                reader = null;
+            }
+            dir.close();
+        }
+
+        public long run() throws IOException {
+            switch (phase) {
+            case "open":
+                reader = DirectoryReader.open(dir);
+                return reader.maxDoc();
+            case "warm":
+                return warm(reader);
+            case "firstQuery":
+            case "firstQueryWarmed":
+                return search(new IndexSearcher(reader));
+            case "steadyState":
+            case "steadyStateWarmed":
+                return untilSteady(new IndexSearcher(reader));
+            default:
+                throw new IllegalArgumentException("Unknown phase " + phase);
+            }
+        }
+
+        private long search(final IndexSearcher searcher) throws IOException {
+            return searcher.search(searchQueries[random.nextInt(searchQueries.length)], 50).totalHits.value;
+        }
+
+        private long untilSteady(final IndexSearcher searcher) throws IOException {
+            double previous = Double.MAX_VALUE;
+            for (int window = 1; window <= MAX_WINDOWS; window++) {
+                final long start = System.nanoTime();
+                for (int i = 0; i < STEADY_WINDOW; i++) {
+                    search(searcher);
+                }
+                final double mean = (System.nanoTime() - start) / (double) STEADY_WINDOW;
+                if (Math.abs(mean - previous) <= previous * 0.1) {
+                    System.out.println(String.format("steady after %d queries at %.1f us/query",
+                            window * STEADY_WINDOW, mean / 1000));
+                    return window;
+                }
+                previous = mean;
+            }
+            System.out.println("not steady after " + MAX_WINDOWS * STEADY_WINDOW + " queries");
+            return MAX_WINDOWS;
+        }
+
+        /**
+         * Touch the terms blocks searches will seek to and read every norm.
+         */
+        private long warm(final DirectoryReader reader) throws IOException {
+            long result = 0;
+            for (final LeafReaderContext leaf : reader.leaves()) {
+                final Terms terms = leaf.reader().terms("body");
+                if (terms != null) {
+                    final TermsEnum termsEnum = terms.iterator();
+                    for (final String term : searchTerms) {
+                        if (termsEnum.seekExact(new BytesRef(term))) {
+                            result += termsEnum.docFreq();
+                        }
+                    }
+                }
+                for (final FieldInfo fieldInfo : leaf.reader().getFieldInfos()) {
+                    if (fieldInfo.getIndexOptions() == IndexOptions.NONE || fieldInfo.omitsNorms()) {
+                        continue;
+                    }
+                    final NumericDocValues norms = leaf.reader().getNormValues(fieldInfo.name);
+                    if (norms != null) {
+                        while (norms.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
+                            result += norms.longValue();
+                        }
+                    }
+                }
+            }
+            return result;
+        }
+
+        private static void cleanDirectory(final Directory dir) throws IOException {
+            for (final String name : dir.listAll()) {
+                dir.deleteFile(name);
+            }
+        }
+
+        private static Path generateTestPath() {
+            final String dir = System.getProperty("dir");
+            if (dir == null) {
+                throw new Error("System property 'dir' not set.");
+            }
+            final FileSystem fileSystem = FileSystems.getDefault();
+            return fileSystem.getPath(dir);
+        }
+    }
+
+    public static class FDBColdStartState extends ColdStartState {
+
+        @Setup(Level.Trial)
+        public void startFDBNetworking() throws Exception {
+            FDB.selectAPIVersion(600);
+            db = FDB.instance().open();
+            super.setup();
+        }
+
+        @TearDown(Level.Trial)
+        public void closeFDB() {
+            db.close();
+        }
+
+        @Override
+        public Directory getDirectory(final Path path) throws IOException {
+            return FDBDirectory.open(db, path);
+        }
+    }
+
+    public static class NIOFSColdStartState extends ColdStartState {
+
+        @Setup(Level.Trial)
+        public void setupNIOFS() throws Exception {
+            super.setup();
+        }
+
+        @Override
+        public Directory getDirectory(final Path path) throws IOException {
+            return new NIOFSDirectory(path);
+        }
+    }
+
+    @Benchmark
+    public long coldStartFDB(final FDBColdStartState state) throws Exception {
+        return state.run();
+    }
+
+    @Benchmark
+    public long coldStartNIOFS(final NIOFSColdStartState state) throws Exception {
+        return state.run();
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        final Options opt = new OptionsBuilder().include(ReaderColdStartBenchmark.class.getSimpleName()).build();
+        new Runner(opt).run();
+    }
+
+}
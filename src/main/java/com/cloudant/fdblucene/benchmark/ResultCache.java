@@ -0,0 +1,346 @@
+package com.cloudant.fdblucene.benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TotalHits;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.Accountable;
+
+/**
+ * Whole search results, keyed by query, sort, topN and the version of the
+ * index the searcher reads, and evicted least recently used first once there
+ * are more than maxEntries of them or they hold more than maxBytes.
+ *
+ * A refreshed reader of a changed index has a new version, so it never sees
+ * a result of the old one; those entries simply age out. HEAP keeps the
+ * TopDocs as they are, and counts them and their keys against maxBytes.
+ * DIRECT keeps only the total hits, doc IDs and scores, outside the Java heap
+ * in one direct buffer of maxBytes, so results it returns for a sorted search
+ * are plain ScoreDocs without their sort values. Only the buffer counts
+ * against maxBytes; the keys left on the heap are bounded by maxEntries. The
+ * buffer is carved into power of two slices, and once it runs out a result
+ * takes the slice of the least recently used entry of its size, or is not
+ * cached if there is none.
+ *
+ */
+public final class ResultCache {
+
+    public enum Store {
+        HEAP, DIRECT
+    }
+
+    // what LRUQueryCache assumes for a query that does not report its size
+    private static final long QUERY_BYTES = 1024;
+    private static final long ENTRY_BYTES = 128;
+
+    private static final class Key {
+        private final Directory dir;
+        private final long version;
+        private final Query query;
+        private final Sort sort;
+        private final int topN;
+        private final int hashCode;
+
+        private Key(final Directory dir, final long version, final Query query, final Sort sort, final int topN) {
+            this.dir = dir;
+            this.version = version;
+            this.query = query;
+            this.sort = sort;
+            this.topN = topN;
+            this.hashCode = Objects.hash(System.identityHashCode(dir), version, query, sort, topN);
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return dir == other.dir && version == other.version && topN == other.topN
+                    && query.equals(other.query) && Objects.equals(sort, other.sort);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        private long ramBytesUsed() {
+            return query instanceof Accountable ? ((Accountable) query).ramBytesUsed() : QUERY_BYTES;
+        }
+    }
+
+    /**
+     * Slices of one direct buffer, handed out from its start until it runs
+     * out, then only from those freed. Not thread safe.
+     */
+    private static final class Arena {
+        private final ByteBuffer buffer;
+        private final List<ArrayDeque<ByteBuffer>> free = new ArrayList<>();
+        private int next;
+
+        private Arena(final int capacity) {
+            buffer = ByteBuffer.allocateDirect(capacity);
+            for (int i = 0; i < Integer.SIZE; i++) {
+                free.add(new ArrayDeque<>());
+            }
+        }
+
+        /**
+         * @return a slice of capacity(size) bytes, or null if none is free.
+         */
+        private ByteBuffer allocate(final int size) {
+            final int sizeClass = sizeClass(size);
+            ByteBuffer result = free.get(sizeClass).poll();
+            if (result == null) {
+                final int capacity = 1 << sizeClass;
+                if (capacity > buffer.capacity() - next) {
+                    return null;
+                }
+                final ByteBuffer view = buffer.duplicate();
+                view.position(next);
+                view.limit(next + capacity);
+                result = view.slice();
+                next += capacity;
+            }
+            result.clear();
+            return result;
+        }
+
+        private void free(final ByteBuffer slice) {
+            free.get(sizeClass(slice.capacity())).add(slice);
+        }
+
+        private void clear() {
+            for (final ArrayDeque<ByteBuffer> slices : free) {
+                slices.clear();
+            }
+            next = 0;
+        }
+
+        private static int capacity(final int size) {
+            return 1 << sizeClass(size);
+        }
+
+        private static int sizeClass(final int size) {
+            return size <= 1 ? 0 : Integer.SIZE - Integer.numberOfLeadingZeros(size - 1);
+        }
+    }
+
+    private static final class Entry {
+        private final TopDocs topDocs;
+        private final ByteBuffer buffer;
+        private final long footprint;
+
+        private Entry(final TopDocs topDocs, final ByteBuffer buffer, final long footprint) {
+            this.topDocs = topDocs;
+            this.buffer = buffer;
+            this.footprint = footprint;
+        }
+    }
+
+    private final Store store;
+    private final int maxEntries;
+    private final long maxBytes;
+    private final Arena arena;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytesCached;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public ResultCache(final Store store, final int maxEntries, final long maxBytes) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive.");
+        }
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive.");
+        }
+        this.store = store;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.arena = store == Store.DIRECT ? new Arena((int) Math.min(maxBytes, Integer.MAX_VALUE)) : null;
+    }
+
+    /**
+     * The top topN hits of query, sorted by sort or by score if it is null,
+     * from the cache or else from searcher.
+     *
+     * @throws IllegalArgumentException if searcher does not read a
+     *                                  DirectoryReader, whose version keys
+     *                                  the result.
+     */
+    public TopDocs search(final IndexSearcher searcher, final Query query, final Sort sort, final int topN)
+            throws IOException {
+        final IndexReader reader = searcher.getIndexReader();
+        if (!(reader instanceof DirectoryReader)) {
+            throw new IllegalArgumentException("Cannot cache results of " + reader);
+        }
+        final DirectoryReader directoryReader = (DirectoryReader) reader;
+        final Key key = new Key(directoryReader.directory(), directoryReader.getVersion(), query, sort, topN);
+
+        final TopDocs cached;
+        synchronized (this) {
+            final Entry entry = entries.get(key);
+            // decoded under the lock, as an evicted entry's slice is reused
+            cached = entry == null ? null : entry.topDocs != null ? entry.topDocs : decode(entry.buffer);
+        }
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        misses.incrementAndGet();
+        final TopDocs result = sort == null ? searcher.search(query, topN) : searcher.search(query, topN, sort);
+        put(key, result);
+        return result;
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public long evictions() {
+        return evictions.get();
+    }
+
+    public synchronized long bytesCached() {
+        return bytesCached;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytesCached = 0;
+        if (arena != null) {
+            arena.clear();
+        }
+    }
+
+    private void put(final Key key, final TopDocs topDocs) {
+        if (store == Store.HEAP) {
+            final Entry entry = new Entry(topDocs, null, ENTRY_BYTES + key.ramBytesUsed() + heapBytes(topDocs));
+            if (entry.footprint <= maxBytes) {
+                synchronized (this) {
+                    add(key, entry);
+                }
+            }
+            return;
+        }
+        synchronized (this) {
+            final int size = 13 + 8 * topDocs.scoreDocs.length;
+            ByteBuffer buffer = arena.allocate(size);
+            if (buffer == null && evictSlice(Arena.capacity(size))) {
+                buffer = arena.allocate(size);
+            }
+            if (buffer == null) {
+                return;
+            }
+            encode(topDocs, buffer);
+            add(key, new Entry(null, buffer, buffer.capacity()));
+        }
+    }
+
+    private void add(final Key key, final Entry entry) {
+        final Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            bytesCached -= previous.footprint;
+            if (previous.buffer != null) {
+                arena.free(previous.buffer);
+            }
+        }
+        bytesCached += entry.footprint;
+        final Iterator<Entry> eldest = entries.values().iterator();
+        while ((entries.size() > maxEntries || bytesCached > maxBytes) && eldest.hasNext()) {
+            evict(eldest);
+        }
+    }
+
+    /**
+     * Evicts the least recently used entry whose slice has capacity bytes,
+     * rather than emptying the cache of smaller ones to make room.
+     *
+     * @return false if there is none.
+     */
+    private boolean evictSlice(final int capacity) {
+        final Iterator<Entry> eldest = entries.values().iterator();
+        while (eldest.hasNext()) {
+            final Entry entry = eldest.next();
+            if (entry.buffer.capacity() == capacity) {
+                eldest.remove();
+                evicted(entry);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void evict(final Iterator<Entry> eldest) {
+        final Entry entry = eldest.next();
+        eldest.remove();
+        evicted(entry);
+    }
+
+    private void evicted(final Entry entry) {
+        bytesCached -= entry.footprint;
+        if (entry.buffer != null) {
+            arena.free(entry.buffer);
+        }
+        evictions.incrementAndGet();
+    }
+
+    private static long heapBytes(final TopDocs topDocs) {
+        long result = 0;
+        for (final ScoreDoc scoreDoc : topDocs.scoreDocs) {
+            // object header, doc, score and shardIndex, plus its array slot
+            result += 32;
+            if (scoreDoc instanceof FieldDoc) {
+                final Object[] fields = ((FieldDoc) scoreDoc).fields;
+                result += 16 + 24 * (fields == null ? 0 : fields.length);
+            }
+        }
+        return result;
+    }
+
+    private static void encode(final TopDocs topDocs, final ByteBuffer buffer) {
+        final ScoreDoc[] scoreDocs = topDocs.scoreDocs;
+        buffer.putLong(topDocs.totalHits.value);
+        buffer.put((byte) topDocs.totalHits.relation.ordinal());
+        buffer.putInt(scoreDocs.length);
+        for (final ScoreDoc scoreDoc : scoreDocs) {
+            buffer.putInt(scoreDoc.doc);
+            buffer.putFloat(scoreDoc.score);
+        }
+    }
+
+    private static TopDocs decode(final ByteBuffer buffer) {
+        final TotalHits totalHits = new TotalHits(buffer.getLong(0),
+                TotalHits.Relation.values()[buffer.get(8)]);
+        final ScoreDoc[] scoreDocs = new ScoreDoc[buffer.getInt(9)];
+        for (int i = 0; i < scoreDocs.length; i++) {
+            final int offset = 13 + 8 * i;
+            scoreDocs[i] = new ScoreDoc(buffer.getInt(offset), buffer.getFloat(offset + 4));
+        }
+        return new TopDocs(totalHits, scoreDocs);
+    }
+
+}
@@ -0,0 +1,334 @@
+package com.cloudant.fdblucene.benchmark;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.codecs.lucene80.Lucene80Codec;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.LRUQueryCache;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryCachingPolicy;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.apache.lucene.util.FrequencyTrackingRingBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Timeout;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.apple.foundationdb.Database;
+import com.apple.foundationdb.FDB;
+import com.cloudant.fdblucene.FDBDirectory;
+import com.cloudant.fdblucene.benchmark.DocumentGenerator.DocSize;
+import com.cloudant.fdblucene.benchmark.QueryWorkload.Frequency;
+import com.cloudant.fdblucene.benchmark.QueryWorkload.QueryClass;
+
+/**
+ * Search latency of a repetitive query stream with no caching, with Lucene's
+ * LRUQueryCache under a policy tuned for repetition, and with a ResultCache
+ * on the heap or off it.
+ *
+ * Each trial indexes docs (system property, default 100000) line docs and
+ * builds a pool of up to queries distinct queries of the given class on
+ * frequent terms. Every search picks one from a scrambled Zipfian with the
+ * given skew, and the _SORTED configurations sort its hits by ordinal;
+ * LRUQueryCache is only consulted when scores are not needed, so it is only
+ * run sorted. Both caches get cacheMB of memory and at most queries entries.
+ * After each iteration the cache's hit rate is printed; LRUQueryCache counts
+ * a lookup per segment rather than per search.
+ *
+ */
+@BenchmarkMode(Mode.SampleTime)
+@Fork(1)
+@Warmup(iterations = 2, time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 30, timeUnit = TimeUnit.SECONDS)
+@Timeout(time = 15, timeUnit = TimeUnit.MINUTES)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ResultCacheBenchmark {
+
+    private static final int TOP_N = 10;
+
+    public enum Cache {
+        NONE, LRU_QUERY_CACHE, RESULT_CACHE, RESULT_CACHE_DIRECT
+    }
+
+    /**
+     * A cache and whether searches sort, leaving out LRUQueryCache unsorted.
+     */
+    public enum Config {
+        NONE(Cache.NONE, false),
+        NONE_SORTED(Cache.NONE, true),
+        LRU_QUERY_CACHE_SORTED(Cache.LRU_QUERY_CACHE, true),
+        RESULT_CACHE(Cache.RESULT_CACHE, false),
+        RESULT_CACHE_SORTED(Cache.RESULT_CACHE, true),
+        RESULT_CACHE_DIRECT(Cache.RESULT_CACHE_DIRECT, false),
+        RESULT_CACHE_DIRECT_SORTED(Cache.RESULT_CACHE_DIRECT, true);
+
+        private final Cache cache;
+        private final boolean sorted;
+
+        Config(final Cache cache, final boolean sorted) {
+            this.cache = cache;
+            this.sorted = sorted;
+        }
+    }
+
+    /**
+     * Cache any query seen minUses times among the last 256, where the
+     * default policy never caches a TermQuery and wants more uses of cheap
+     * queries.
+     */
+    static final class RepeatedQueryCachingPolicy implements QueryCachingPolicy {
+        private final FrequencyTrackingRingBuffer recentlyUsed = new FrequencyTrackingRingBuffer(256,
+                Integer.MIN_VALUE);
+        private final int minUses;
+
+        RepeatedQueryCachingPolicy(final int minUses) {
+            this.minUses = minUses;
+        }
+
+        @Override
+        public synchronized void onUse(final Query query) {
+            recentlyUsed.add(query.hashCode());
+        }
+
+        @Override
+        public synchronized boolean shouldCache(final Query query) {
+            return recentlyUsed.frequency(query.hashCode()) >= minUses;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static abstract class AbstractResultCacheState {
+        protected Database db;
+        private final long seed = Long.getLong("seed", 42L);
+        private final long docs = Long.getLong("docs", 100000L);
+        private Directory dir;
+        private DirectoryReader reader;
+        private IndexSearcher searcher;
+        private Query[] pool;
+        private Zipfian queryChoice;
+        private Sort sort;
+        private LRUQueryCache queryCache;
+        private ResultCache resultCache;
+        private long hits;
+        private long misses;
+
+        @Param({ "NONE", "NONE_SORTED", "LRU_QUERY_CACHE_SORTED", "RESULT_CACHE", "RESULT_CACHE_SORTED",
+                "RESULT_CACHE_DIRECT", "RESULT_CACHE_DIRECT_SORTED" })
+        Config config;
+
+        @Param({ "TERM", "OR" })
+        QueryClass queryClass;
+
+        @Param({ "10000" })
+        int queries;
+
+        @Param({ "0.99", "0.5" })
+        double skew;
+
+        /** 1 is too small for every result in each configuration, 64 holds them all. */
+        @Param({ "1", "64" })
+        long cacheMB;
+
+        public abstract Directory getDirectory(final Path path) throws IOException;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            dir = getDirectory(generateTestPath());
+            cleanDirectory();
+            new StreamingIndexBuilder("linedocs", seed, DocSize.MEDIAN, 1, docs).build(dir, indexWriterConfig(),
+                    docs);
+            reader = DirectoryReader.open(dir);
+            searcher = new IndexSearcher(reader);
+            // ranks must fall on distinct queries, or a hot one gets several
+            pool = QueryWorkload.build(reader, seed, queries).distinct(queryClass, Frequency.HIGH);
+            if (pool.length < queries) {
+                System.out.println(String.format("only %d distinct queries of %d", pool.length, queries));
+            }
+            queryChoice = new Zipfian(pool.length, skew);
+            sort = config.sorted ? new Sort(new SortField("ordinal", SortField.Type.LONG)) : null;
+
+            final long maxBytes = cacheMB * 1024 * 1024;
+            switch (config.cache) {
+            case NONE:
+                searcher.setQueryCache(null);
+                break;
+            case LRU_QUERY_CACHE:
+                // cache every segment, not only the large ones
+                queryCache = new LRUQueryCache(queries, maxBytes, context -> true);
+                searcher.setQueryCache(queryCache);
+                searcher.setQueryCachingPolicy(new RepeatedQueryCachingPolicy(2));
+                break;
+            case RESULT_CACHE:
+                searcher.setQueryCache(null);
+                resultCache = new ResultCache(ResultCache.Store.HEAP, queries, maxBytes);
+                break;
+            case RESULT_CACHE_DIRECT:
+                searcher.setQueryCache(null);
+                resultCache = new ResultCache(ResultCache.Store.DIRECT, queries, maxBytes);
+                break;
+            }
+        }
+
+        @Setup(Level.Iteration)
+        public void resetMetrics() {
+            hits = hitCount();
+            misses = missCount();
+        }
+
+        @TearDown(Level.Iteration)
+        public void report() {
+            if (config.cache == Cache.NONE) {
+                return;
+            }
+            final long hitCount = hitCount() - hits;
+            final long missCount = missCount() - misses;
+            System.out.println(String.format("hit rate %.1f%% of %d lookups, %.1f MB cached",
+                    100.0 * hitCount / Math.max(1, hitCount + missCount), hitCount + missCount,
+                    (queryCache != null ? queryCache.ramBytesUsed() : resultCache.bytesCached()) / 1048576.0));
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() throws Exception {
+            reader.close();
+            cleanDirectory();
+            dir.close();
+        }
+
+        long search(final QueryStream stream) throws IOException {
+            final Query query = pool[(int) queryChoice.nextScrambled(stream.random)];
+            if (resultCache != null) {
+                return resultCache.search(searcher, query, sort, TOP_N).totalHits.value;
+            }
+            if (sort != null) {
+                return searcher.search(query, TOP_N, sort).totalHits.value;
+            }
+            return searcher.search(query, TOP_N).totalHits.value;
+        }
+
+        private long hitCount() {
+            if (queryCache != null) {
+                return queryCache.getHitCount();
+            }
+            return resultCache != null ? resultCache.hits() : 0;
+        }
+
+        private long missCount() {
+            if (queryCache != null) {
+                return queryCache.getMissCount();
+            }
+            return resultCache != null ? resultCache.misses() : 0;
+        }
+
+        private IndexWriterConfig indexWriterConfig() {
+            final IndexWriterConfig config = new IndexWriterConfig();
+            config.setUseCompoundFile(false);
+            config.setCodec(new Lucene80Codec());
+            return config;
+        }
+
+        private void cleanDirectory() throws IOException {
+            for (final String name : dir.listAll()) {
+                dir.deleteFile(name);
+            }
+        }
+
+        private Path generateTestPath() {
+            final String dir = System.getProperty("dir");
+            if (dir == null) {
+                throw new Error("System property 'dir' not set.");
+            }
+            final FileSystem fileSystem = FileSystems.getDefault();
+            return fileSystem.getPath(dir);
+        }
+    }
+
+    public static class FDBResultCacheState extends AbstractResultCacheState {
+
+        @Param({ "10000" })
+        int pageSize;
+
+        @Param({ "10" })
+        int pagesPerTxn;
+
+        @Override
+        public void setup() throws Exception {
+            FDB.selectAPIVersion(600);
+            db = FDB.instance().open();
+            super.setup();
+        }
+
+        @Override
+        public void teardown() throws Exception {
+            super.teardown();
+            db.close();
+        }
+
+        @Override
+        public Directory getDirectory(final Path path) throws IOException {
+            return FDBDirectory.open(db, path, pageSize, pageSize * pagesPerTxn);
+        }
+    }
+
+    public static class NIOFSResultCacheState extends AbstractResultCacheState {
+
+        @Override
+        public Directory getDirectory(final Path path) throws IOException {
+            return new NIOFSDirectory(path);
+        }
+    }
+
+    /**
+     * Each thread's own stream of query choices.
+     */
+    @State(Scope.Thread)
+    public static class QueryStream {
+        private final long seed = Long.getLong("seed", 42L);
+        private Random random;
+
+        @Setup(Level.Trial)
+        public void setup(final ThreadParams threads) {
+            random = new Random(seed + threads.getThreadIndex());
+        }
+    }
+
+    @Benchmark
+    public long searchFDB(final FDBResultCacheState state, final QueryStream stream) throws IOException {
+        return state.search(stream);
+    }
+
+    @Benchmark
+    public long searchNIOFS(final NIOFSResultCacheState state, final QueryStream stream) throws IOException {
+        return state.search(stream);
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        final Options opt = new OptionsBuilder().include(ResultCacheBenchmark.class.getSimpleName()).build();
+        new Runner(opt).run();
+    }
+
+}
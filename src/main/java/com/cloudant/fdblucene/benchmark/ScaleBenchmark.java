@@ -0,0 +1,248 @@
+package com.cloudant.fdblucene.benchmark;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.codecs.lucene80.Lucene80Codec;
+import org.apache.lucene.index.CodecReader;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Timeout;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.apple.foundationdb.Database;
+import com.apple.foundationdb.FDB;
+import com.cloudant.fdblucene.FDBDirectory;
+import com.cloudant.fdblucene.benchmark.DocumentGenerator.DocSize;
+import com.cloudant.fdblucene.benchmark.QueryWorkload.Frequency;
+import com.cloudant.fdblucene.benchmark.QueryWorkload.QueryClass;
+
+/**
+ * Search latency, reader open time and reader memory as the index grows to
+ * 1M, 10M and 100M documents.
+ *
+ * The indexes, one per size under dir, are built beforehand by
+ * ScaleIndexBuilder, since building 100M documents takes far longer than a
+ * trial should; a trial whose index is missing or incomplete fails. They are
+ * kept after the run for later runs to reuse; delete them by hand to reclaim
+ * the space.
+ *
+ * Each trial opens the reader once and prints its open time, the
+ * ramBytesUsed of its segments and the growth in used heap.
+ *
+ */
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@Warmup(iterations = 2, time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 30, timeUnit = TimeUnit.SECONDS)
+@Timeout(time = 30, timeUnit = TimeUnit.MINUTES)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ScaleBenchmark {
+
+    private static final int TOP_N = 10;
+    private static final int POOL_SIZE = 1000;
+
+    @State(Scope.Benchmark)
+    public static abstract class AbstractScaleState {
+        protected Database db;
+        private final long seed = Long.getLong("seed", 42L);
+        private Directory dir;
+        private DirectoryReader reader;
+        private IndexSearcher searcher;
+        private QueryWorkload workload;
+        private int index;
+
+        @Param({ "1000000", "10000000", "100000000" })
+        long docs;
+
+        /** id, linedocs or synthetic, see DocumentGenerator. */
+        @Param({ "linedocs" })
+        String generator;
+
+        /** tiny, median, huge or mixed. */
+        @Param({ "median" })
+        String docSize;
+
+        public abstract Directory getDirectory(final Path path) throws IOException;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            dir = getDirectory(generateTestPath().resolve(indexName(generator, docSize, seed, docs)));
+            final long built = new StreamingIndexBuilder(generator, seed, DocSize.parse(docSize), 1, docs)
+                    .built(dir);
+            if (built < docs) {
+                dir.close();
+                throw new IllegalStateException(String.format(
+                        "%s holds %d of %d docs, build it first with ScaleIndexBuilder", dir, built, docs));
+            }
+
+            final long heapBefore = usedHeap();
+            final long start = System.nanoTime();
+            reader = DirectoryReader.open(dir);
+            final long elapsed = System.nanoTime() - start;
+            final long heapAfter = usedHeap();
+            long ramBytesUsed = 0;
+            for (final LeafReaderContext leaf : reader.leaves()) {
+                if (leaf.reader() instanceof CodecReader) {
+                    ramBytesUsed += ((CodecReader) leaf.reader()).ramBytesUsed();
+                }
+            }
+            System.out.println(String.format(
+                    "%d docs in %d segments, reader opened in %d ms, ramBytesUsed %.1f MB, heap grew %.1f MB",
+                    reader.numDocs(), reader.leaves().size(), TimeUnit.NANOSECONDS.toMillis(elapsed),
+                    ramBytesUsed / 1048576.0, (heapAfter - heapBefore) / 1048576.0));
+
+            searcher = new IndexSearcher(reader);
+            workload = QueryWorkload.build(reader, seed, POOL_SIZE);
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() throws Exception {
+            reader.close();
+            dir.close();
+        }
+
+        long search(final ScaleQueries queries) throws IOException {
+            return workload.execute(searcher, queries.queryClass,
+                    workload.query(queries.queryClass, queries.frequency, index++), TOP_N);
+        }
+
+        long open() throws IOException {
+            try (final DirectoryReader result = DirectoryReader.open(dir)) {
+                return result.maxDoc();
+            }
+        }
+
+        private Path generateTestPath() {
+            final String dir = System.getProperty("dir");
+            if (dir == null) {
+                throw new Error("System property 'dir' not set.");
+            }
+            final FileSystem fileSystem = FileSystems.getDefault();
+            return fileSystem.getPath(dir);
+        }
+
+        private static long usedHeap() {
+            System.gc();
+            final Runtime runtime = Runtime.getRuntime();
+            return runtime.totalMemory() - runtime.freeMemory();
+        }
+    }
+
+    /**
+     * @return the name of the directory under dir holding the index for
+     *         these settings.
+     */
+    static String indexName(final String generator, final String docSize, final long seed, final long docs) {
+        return String.format("scale-%s-%s-seed-%d-docs-%d", generator, docSize, seed, docs);
+    }
+
+    static IndexWriterConfig indexWriterConfig() {
+        final IndexWriterConfig config = new IndexWriterConfig();
+        config.setUseCompoundFile(false);
+        config.setCodec(new Lucene80Codec());
+        config.setRAMBufferSizeMB(256);
+        return config;
+    }
+
+    public static class FDBScaleState extends AbstractScaleState {
+
+        @Param({ "10000" })
+        int pageSize;
+
+        @Param({ "10" })
+        int pagesPerTxn;
+
+        @Override
+        public void setup() throws Exception {
+            FDB.selectAPIVersion(600);
+            db = FDB.instance().open();
+            super.setup();
+        }
+
+        @Override
+        public void teardown() throws Exception {
+            super.teardown();
+            db.close();
+        }
+
+        @Override
+        public Directory getDirectory(final Path path) throws IOException {
+            return FDBDirectory.open(db, path, pageSize, pageSize * pagesPerTxn);
+        }
+    }
+
+    public static class NIOFSScaleState extends AbstractScaleState {
+
+        @Override
+        public Directory getDirectory(final Path path) throws IOException {
+            return new NIOFSDirectory(path);
+        }
+    }
+
+    /**
+     * The query parameters, kept apart so the open benchmarks do not repeat
+     * for each of them.
+     */
+    @State(Scope.Benchmark)
+    public static class ScaleQueries {
+
+        @Param({ "TERM", "AND", "PHRASE" })
+        QueryClass queryClass;
+
+        @Param({ "MEDIUM" })
+        Frequency frequency;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    public long searchFDB(final FDBScaleState state, final ScaleQueries queries) throws IOException {
+        return state.search(queries);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    public long searchNIOFS(final NIOFSScaleState state, final ScaleQueries queries) throws IOException {
+        return state.search(queries);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    public long openFDB(final FDBScaleState state) throws IOException {
+        return state.open();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    public long openNIOFS(final NIOFSScaleState state) throws IOException {
+        return state.open();
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        final Options opt = new OptionsBuilder().include(ScaleBenchmark.class.getSimpleName()).build();
+        new Runner(opt).run();
+    }
+
+}
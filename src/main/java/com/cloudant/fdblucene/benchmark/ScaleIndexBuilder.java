@@ -0,0 +1,68 @@
+package com.cloudant.fdblucene.benchmark;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.NIOFSDirectory;
+
+import com.apple.foundationdb.Database;
+import com.apple.foundationdb.FDB;
+import com.cloudant.fdblucene.FDBDirectory;
+import com.cloudant.fdblucene.benchmark.DocumentGenerator.DocSize;
+
+/**
+ * Builds the indexes ScaleBenchmark searches, outside of any timed trial.
+ *
+ * Not a JMH benchmark, run it with
+ * java -Ddir=... -cp benchmarks.jar com.cloudant.fdblucene.benchmark.ScaleIndexBuilder
+ *
+ * Settings are system properties: docs (comma separated sizes, default
+ * 1000000,10000000,100000000), directories (fdb, nios or both), generator,
+ * docSize and seed as in ScaleBenchmark, buildThreads (default the number of
+ * processors), commitEvery (default 100000), and pageSize and pagesPerTxn for
+ * FDB. Run it again with the same settings to resume an interrupted build.
+ *
+ */
+public final class ScaleIndexBuilder {
+
+    public static void main(final String[] args) throws Exception {
+        final String dir = System.getProperty("dir");
+        if (dir == null) {
+            throw new Error("System property 'dir' not set.");
+        }
+        final Path root = FileSystems.getDefault().getPath(dir);
+        final String generator = System.getProperty("generator", "linedocs");
+        final String docSize = System.getProperty("docSize", "median");
+        final long seed = Long.getLong("seed", 42L);
+        final int buildThreads = Integer.getInteger("buildThreads", Runtime.getRuntime().availableProcessors());
+        final long commitEvery = Long.getLong("commitEvery", 100000L);
+        final int pageSize = Integer.getInteger("pageSize", 10000);
+        final int pagesPerTxn = Integer.getInteger("pagesPerTxn", 10);
+        final String directories = System.getProperty("directories", "both");
+        final StreamingIndexBuilder builder = new StreamingIndexBuilder(generator, seed, DocSize.parse(docSize),
+                buildThreads, commitEvery);
+
+        for (final String count : System.getProperty("docs", "1000000,10000000,100000000").split(",")) {
+            final long docs = Long.parseLong(count.trim());
+            final Path path = root.resolve(ScaleBenchmark.indexName(generator, docSize, seed, docs));
+            if (!"nios".equals(directories)) {
+                FDB.selectAPIVersion(600);
+                final Database db = FDB.instance().open();
+                try (final Directory target = FDBDirectory.open(db, path, pageSize, pageSize * pagesPerTxn)) {
+                    System.out.println(String.format("FDBDirectory %s: added %d docs", path,
+                            builder.build(target, ScaleBenchmark.indexWriterConfig(), docs)));
+                } finally {
+                    db.close();
+                }
+            }
+            if (!"fdb".equals(directories)) {
+                try (final Directory target = new NIOFSDirectory(path)) {
+                    System.out.println(String.format("NIOFSDirectory %s: added %d docs", path,
+                            builder.build(target, ScaleBenchmark.indexWriterConfig(), docs)));
+                }
+            }
+        }
+    }
+
+}
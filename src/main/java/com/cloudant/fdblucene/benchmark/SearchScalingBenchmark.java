@@ -0,0 +1,217 @@
+package com.cloudant.fdblucene.benchmark;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Timeout;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * How search throughput scales with cores, comparing one query per thread
+ * against segment-parallel search through an IndexSearcher executor.
+ *
+ * executor=none runs each query on the calling thread; fixed uses a pool of
+ * searchExecutorThreads (default: available processors); virtual uses a
+ * virtual thread per task and needs JDK 21 or later, so it only runs when
+ * asked for with -p executor=virtual.
+ *
+ * main runs the suite once per thread count in the threads system property
+ * (default 1, 2, 4... up to the available processors), adding virtual if the
+ * JDK has virtual threads, and prints throughput and parallel efficiency,
+ * throughput / (threads * single thread throughput).
+ *
+ */
+public class SearchScalingBenchmark {
+
+    @State(Scope.Benchmark)
+    public static abstract class ScalingState {
+
+        @Param({ "none", "fixed" })
+        public String executor;
+
+        private ExecutorService executorService;
+        private IndexSearcher searcher;
+
+        protected void startExecutor() throws Exception {
+            switch (executor) {
+            case "none":
+                break;
+            case "fixed":
+                executorService = Executors.newFixedThreadPool(
+                        Integer.getInteger("searchExecutorThreads", Runtime.getRuntime().availableProcessors()));
+                break;
+            case "virtual":
+                executorService = newVirtualThreadExecutor();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown executor " + executor);
+            }
+        }
+
+        protected void createSearcher(final SearchSetup setup) {
+            searcher = executorService == null
+                    ? new IndexSearcher(setup.reader)
+                    : new IndexSearcher(setup.reader, executorService);
+        }
+
+        @TearDown(Level.Trial)
+        public void stopExecutor() throws InterruptedException {
+            if (executorService != null) {
+                executorService.shutdown();
+                executorService.awaitTermination(1, TimeUnit.MINUTES);
+            }
+        }
+
+        public long search(final SearchSetup setup) throws Exception {
+            final Query[] queries = setup.searchQueries;
+            final Query query = queries[ThreadLocalRandom.current().nextInt(queries.length)];
+            return searcher.search(query, setup.topNDocs).totalHits.value;
+        }
+
+        private static ExecutorService newVirtualThreadExecutor() throws Exception {
+            final Method factory;
+            try {
+                factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            } catch (final NoSuchMethodException e) {
+                throw new UnsupportedOperationException(
+                        "Virtual threads need JDK 21 or later, running on " + System.getProperty("java.version"));
+            }
+            return (ExecutorService) factory.invoke(null);
+        }
+    }
+
+    public static class FDBScaling extends ScalingState {
+        @Setup(Level.Trial)
+        public void setupExecutor() throws Exception {
+            startExecutor();
+        }
+
+        @Setup(Level.Iteration)
+        public void setupSearcher(final FDBSearchSetup setup) {
+            createSearcher(setup);
+        }
+    }
+
+    public static class NIOSScaling extends ScalingState {
+        @Setup(Level.Trial)
+        public void setupExecutor() throws Exception {
+            startExecutor();
+        }
+
+        @Setup(Level.Iteration)
+        public void setupSearcher(final NIOSSearchSetup setup) {
+            createSearcher(setup);
+        }
+    }
+
+    @BenchmarkMode(Mode.Throughput)
+    @Fork(1)
+    @Warmup(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+    @Measurement(iterations = 3, time = 1, timeUnit = TimeUnit.MINUTES)
+    @Timeout(time = 15, timeUnit = TimeUnit.MINUTES)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Benchmark
+    public long searchFDB(final FDBSearchSetup setup, final FDBScaling scaling) throws Exception {
+        return scaling.search(setup);
+    }
+
+    @BenchmarkMode(Mode.Throughput)
+    @Fork(1)
+    @Warmup(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+    @Measurement(iterations = 3, time = 1, timeUnit = TimeUnit.MINUTES)
+    @Timeout(time = 15, timeUnit = TimeUnit.MINUTES)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Benchmark
+    public long searchNIOS(final NIOSSearchSetup setup, final NIOSScaling scaling) throws Exception {
+        return scaling.search(setup);
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        final int[] threadCounts = threadCounts(System.getProperty("threads"));
+        // benchmark and executor -> throughput per thread count
+        final Map<String, double[]> scores = new LinkedHashMap<>();
+        for (int i = 0; i < threadCounts.length; i++) {
+            final OptionsBuilder builder = new OptionsBuilder();
+            builder.include(SearchScalingBenchmark.class.getSimpleName()).threads(threadCounts[i]);
+            if (hasVirtualThreads()) {
+                builder.param("executor", "none", "fixed", "virtual");
+            }
+            final Options opt = builder.build();
+            final Collection<RunResult> results = new Runner(opt).run();
+            for (final RunResult result : results) {
+                final String key = result.getParams().getBenchmark().replaceFirst(".*\\.", "")
+                        + " executor=" + result.getParams().getParam("executor");
+                scores.computeIfAbsent(key, k -> new double[threadCounts.length])[i] =
+                        result.getPrimaryResult().getScore();
+            }
+        }
+
+        System.out.println();
+        System.out.println(String.format("%-32s %8s %12s %10s", "benchmark", "threads", "ops/s", "efficiency"));
+        for (final Map.Entry<String, double[]> entry : scores.entrySet()) {
+            final double[] score = entry.getValue();
+            for (int i = 0; i < threadCounts.length; i++) {
+                final double efficiency = score[0] == 0 ? 0 : score[i] / (score[0] * threadCounts[i] / threadCounts[0]);
+                System.out.println(String.format("%-32s %8d %12.1f %9.0f%%",
+                        entry.getKey(), threadCounts[i], score[i], efficiency * 100));
+            }
+        }
+    }
+
+    private static boolean hasVirtualThreads() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (final NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private static int[] threadCounts(final String spec) {
+        final List<Integer> result = new ArrayList<>();
+        if (spec == null) {
+            final int cores = Runtime.getRuntime().availableProcessors();
+            for (int t = 1; t < cores; t *= 2) {
+                result.add(t);
+            }
+            result.add(cores);
+        } else {
+            for (final String count : spec.split(",")) {
+                result.add(Integer.parseInt(count.trim()));
+            }
+        }
+        final int[] array = new int[result.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = result.get(i);
+        }
+        return array;
+    }
+
+}
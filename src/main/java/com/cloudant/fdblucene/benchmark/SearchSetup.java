@@ -5,22 +5,17 @@ import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Path;
 import java.util.Random;
-import java.util.concurrent.atomic.AtomicLong;
 import java.util.List;
 import java.util.ArrayList;
 
 import org.apache.lucene.codecs.lucene80.Lucene80Codec;
-import org.apache.lucene.document.Document;
-import org.apache.lucene.document.Field.Store;
-import org.apache.lucene.document.StringField;
 import org.apache.lucene.index.DirectoryReader;
-import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.store.Directory;
-import org.apache.lucene.util.LineFileDocs;
-import org.apache.lucene.util.LuceneTestCase;
 
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.Level;
@@ -30,55 +25,38 @@ import org.openjdk.jmh.annotations.State;
 import org.openjdk.jmh.annotations.TearDown;
 
 import com.apple.foundationdb.Database;
+import com.cloudant.fdblucene.store.IOMetrics;
 
 @State(Scope.Benchmark)
 public abstract class SearchSetup {
     public Database db;
     public Directory dir;
-    public Document doc;
-    public IndexWriter writer;
     public DirectoryReader reader;
     public IndexSearcher searcher;
-    public StringField idField;
-    public AtomicLong counter = new AtomicLong();
     public Random random;
-    public LineFileDocs docs;
     public int docsToIndex = 100000;
     public List<String> searchTermList = new ArrayList<String>();
+    /** A TermQuery on body for each of searchTermList, built up front. */
+    public Query[] searchQueries;
     public int topNDocs = 50;
     public int maxSearchTerms = 1000;
+    public long seed = Long.getLong("seed", 42L);
+    public BenchmarkCorpus corpus;
 
     public abstract Directory getDirectory(final Path path) throws IOException;
 
     public void setup() throws Exception {
-        final IndexWriterConfig config = indexWriterConfig();
-        dir = getDirectory(generateTestPath());
+        dir = IOMetrics.wrap(getDirectory(generateTestPath()));
         cleanDirectory();
-        writer = new IndexWriter(dir, config);
-        random = new Random();
-        for (int i = 0; i < docsToIndex; i++) {
-            docs = new LineFileDocs(random, LuceneTestCase.DEFAULT_LINE_DOCS_FILE);
-            doc = docs.nextDoc();
-            // Look through the body's terms, grab a String term, store it
-            // so that it can be randomly chosen for search later on
-            String[] body = doc.getValues("body");
-            String[] terms = null;
-            if(body.length > 0) {
-                terms = body[0].split("\\s+");
-            }
-            if(terms !=null && searchTermList.size() < maxSearchTerms) {
-                int randomTermPosition = random.nextInt(terms.length);
-                searchTermList.add(terms[randomTermPosition]);
-            }
-
-            idField = new StringField("_id", "", Store.YES);
-            idField.setStringValue("doc-" + counter.incrementAndGet());
-            doc.add(idField);
-            writer.addDocument(doc);
+        corpus = BenchmarkCorpus.open(docsToIndex, seed, maxSearchTerms);
+        corpus.copyTo(dir);
+        searchTermList.addAll(corpus.getSearchTerms());
+        searchQueries = new Query[searchTermList.size()];
+        for (int i = 0; i < searchQueries.length; i++) {
+            searchQueries[i] = new TermQuery(new Term("body", searchTermList.get(i)));
         }
-        writer.commit();
-        System.out.println("Commited Indexing");
-        writer.close();
+        random = new Random(seed);
+        System.out.println("Copied corpus " + corpus);
     }
 
     @Setup(Level.Iteration)
@@ -0,0 +1,203 @@
+package com.cloudant.fdblucene.benchmark;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.codecs.lucene80.Lucene80Codec;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Timeout;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.apple.foundationdb.Database;
+import com.apple.foundationdb.FDB;
+import com.cloudant.fdblucene.FDBDirectory;
+import com.cloudant.fdblucene.benchmark.DocumentGenerator.DocSize;
+import com.cloudant.fdblucene.benchmark.QueryWorkload.Frequency;
+import com.cloudant.fdblucene.benchmark.QueryWorkload.QueryClass;
+import com.cloudant.fdblucene.benchmark.StoredFieldsFetcher.Strategy;
+
+/**
+ * Latency of loading the stored fields of the top N hits of a search, by
+ * StoredFieldsFetcher strategy, N and document size.
+ *
+ * Each trial searches an index of docs (system property, default 100000) line
+ * docs of the given size with OR queries of frequent terms, so there are at
+ * least topN hits. The index for each size is built by the first trial that
+ * needs it and kept under dir for the other topN, fetch and fields trials;
+ * clear dir after the run, or to rebuild. NONE times the search alone; the
+ * other strategies add the cost of loading every hit, either all fields or
+ * only _id. PARALLEL loads with fetchThreads threads (system property,
+ * default 4).
+ *
+ */
+@BenchmarkMode(Mode.SampleTime)
+@Fork(1)
+@Warmup(iterations = 2, time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 30, timeUnit = TimeUnit.SECONDS)
+@Timeout(time = 15, timeUnit = TimeUnit.MINUTES)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StoredFieldsBenchmark {
+
+    private static final int POOL_SIZE = 1000;
+
+    @State(Scope.Benchmark)
+    public static abstract class AbstractStoredFieldsState {
+        protected Database db;
+        private final long seed = Long.getLong("seed", 42L);
+        private final long docs = Long.getLong("docs", 100000L);
+        private final int fetchThreads = Integer.getInteger("fetchThreads", 4);
+        private Directory dir;
+        private DirectoryReader reader;
+        private IndexSearcher searcher;
+        private QueryWorkload workload;
+        private ExecutorService executor;
+        private StoredFieldsFetcher fetcher;
+        private Set<String> fieldSet;
+        private int index;
+
+        /** tiny, median, huge or mixed. */
+        @Param({ "tiny", "median", "huge" })
+        String docSize;
+
+        @Param({ "10", "100", "1000" })
+        int topN;
+
+        @Param({ "NONE", "NAIVE", "SORTED", "PARALLEL" })
+        Strategy fetch;
+
+        /** all, or a single field name to load. */
+        @Param({ "all", "_id" })
+        String fields;
+
+        public abstract Directory getDirectory(final Path path) throws IOException;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            dir = getDirectory(generateTestPath()
+                    .resolve(String.format("stored-%s-%d-seed-%d", docSize, docs, seed)));
+            // one thread, so doc IDs follow ordinals from run to run
+            new StreamingIndexBuilder("linedocs", seed, DocSize.parse(docSize), 1, docs).build(dir,
+                    indexWriterConfig(), docs);
+            reader = DirectoryReader.open(dir);
+            searcher = new IndexSearcher(reader);
+            workload = QueryWorkload.build(reader, seed, POOL_SIZE);
+            if (fetch == Strategy.PARALLEL) {
+                executor = Executors.newFixedThreadPool(fetchThreads);
+            }
+            fetcher = new StoredFieldsFetcher(fetch, executor, fetchThreads);
+            fieldSet = "all".equals(fields) ? null : Collections.singleton(fields);
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() throws Exception {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            reader.close();
+            dir.close();
+        }
+
+        Document[] fetch() throws IOException {
+            final ScoreDoc[] hits = searcher.search(workload.query(QueryClass.OR, Frequency.HIGH, index++),
+                    topN).scoreDocs;
+            return fetcher.fetch(reader, hits, fieldSet);
+        }
+
+        private IndexWriterConfig indexWriterConfig() {
+            final IndexWriterConfig config = new IndexWriterConfig();
+            config.setUseCompoundFile(false);
+            config.setCodec(new Lucene80Codec());
+            return config;
+        }
+
+        private Path generateTestPath() {
+            final String dir = System.getProperty("dir");
+            if (dir == null) {
+                throw new Error("System property 'dir' not set.");
+            }
+            final FileSystem fileSystem = FileSystems.getDefault();
+            return fileSystem.getPath(dir);
+        }
+    }
+
+    public static class FDBStoredFieldsState extends AbstractStoredFieldsState {
+
+        @Param({ "10000" })
+        int pageSize;
+
+        @Param({ "10" })
+        int pagesPerTxn;
+
+        @Override
+        public void setup() throws Exception {
+            FDB.selectAPIVersion(600);
+            db = FDB.instance().open();
+            super.setup();
+        }
+
+        @Override
+        public void teardown() throws Exception {
+            super.teardown();
+            db.close();
+        }
+
+        @Override
+        public Directory getDirectory(final Path path) throws IOException {
+            return FDBDirectory.open(db, path.resolve(pageSize + "x" + pagesPerTxn), pageSize,
+                    pageSize * pagesPerTxn);
+        }
+    }
+
+    public static class NIOFSStoredFieldsState extends AbstractStoredFieldsState {
+
+        @Override
+        public Directory getDirectory(final Path path) throws IOException {
+            return new NIOFSDirectory(path);
+        }
+    }
+
+    @Benchmark
+    public Document[] fetchFDB(final FDBStoredFieldsState state) throws IOException {
+        return state.fetch();
+    }
+
+    @Benchmark
+    public Document[] fetchNIOFS(final NIOFSStoredFieldsState state) throws IOException {
+        return state.fetch();
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        final Options opt = new OptionsBuilder().include(StoredFieldsBenchmark.class.getSimpleName()).build();
+        new Runner(opt).run();
+    }
+
+}
@@ -0,0 +1,149 @@
+package com.cloudant.fdblucene.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.DocumentStoredFieldVisitor;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.search.ScoreDoc;
+
+/**
+ * Load the stored fields of search hits, returning them in hit order.
+ *
+ * NAIVE loads them one by one in hit order, as IndexSearcher.doc does.
+ * SORTED loads them in doc ID order, so hits that share a compressed block,
+ * or a page of the underlying file, are read together. PARALLEL splits the
+ * sorted hits into contiguous runs loaded concurrently, to overlap the round
+ * trips of a remote directory; each thread reads through its own clone of
+ * the stored fields reader.
+ *
+ * Lucene's stored fields reader chooses what to read, so batching happens at
+ * the granularity of its calls into the directory rather than by asking for
+ * the blocks up front.
+ *
+ */
+public final class StoredFieldsFetcher {
+
+    public enum Strategy {
+        NONE, NAIVE, SORTED, PARALLEL
+    }
+
+    private final Strategy strategy;
+    private final ExecutorService executor;
+    private final int threads;
+
+    /**
+     * @param executor runs PARALLEL loads, with threads runs per fetch. Not
+     *                 used by the other strategies.
+     */
+    public StoredFieldsFetcher(final Strategy strategy, final ExecutorService executor, final int threads) {
+        if (strategy == Strategy.PARALLEL && (executor == null || threads < 1)) {
+            throw new IllegalArgumentException("PARALLEL needs an executor and at least one thread");
+        }
+        this.strategy = strategy;
+        this.executor = executor;
+        this.threads = threads;
+    }
+
+    /**
+     * @param fields the fields to load, or null for all of them.
+     * @return the documents of hits, in the same order.
+     */
+    public Document[] fetch(final IndexReader reader, final ScoreDoc[] hits, final Set<String> fields)
+            throws IOException {
+        final Document[] result = new Document[hits.length];
+        switch (strategy) {
+        case NONE:
+            break;
+        case NAIVE:
+            for (int i = 0; i < hits.length; i++) {
+                result[i] = load(reader, hits[i].doc, fields);
+            }
+            break;
+        case SORTED:
+            loadSorted(reader, sorted(hits), 0, hits.length, fields, result);
+            break;
+        case PARALLEL:
+            loadParallel(reader, sorted(hits), fields, result);
+            break;
+        default:
+            throw new AssertionError(strategy);
+        }
+        return result;
+    }
+
+    private void loadParallel(final IndexReader reader, final long[] order, final Set<String> fields,
+            final Document[] result) throws IOException {
+        final int runs = Math.min(threads, order.length);
+        final List<Future<Void>> futures = new ArrayList<>(runs);
+        try {
+            // the calling thread takes the first run itself
+            for (int run = 1; run < runs; run++) {
+                final int from = order.length * run / runs;
+                final int to = order.length * (run + 1) / runs;
+                futures.add(executor.submit(() -> {
+                    loadSorted(reader, order, from, to, fields, result);
+                    return null;
+                }));
+            }
+            loadSorted(reader, order, 0, runs == 0 ? 0 : order.length / runs, fields, result);
+            for (final Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            for (final Future<Void> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private static void loadSorted(final IndexReader reader, final long[] order, final int from, final int to,
+            final Set<String> fields, final Document[] result) throws IOException {
+        final List<LeafReaderContext> leaves = reader.leaves();
+        for (int i = from; i < to; i++) {
+            final int doc = (int) (order[i] >>> 32);
+            final int hit = (int) order[i];
+            final LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(doc, leaves));
+            result[hit] = load(leaf.reader(), doc - leaf.docBase, fields);
+        }
+    }
+
+    private static Document load(final IndexReader reader, final int doc, final Set<String> fields)
+            throws IOException {
+        final DocumentStoredFieldVisitor visitor = fields == null ? new DocumentStoredFieldVisitor()
+                : new DocumentStoredFieldVisitor(fields);
+        reader.document(doc, visitor);
+        return visitor.getDocument();
+    }
+
+    /**
+     * @return doc IDs in the high half and hit positions in the low half,
+     *         sorted by doc ID.
+     */
+    private static long[] sorted(final ScoreDoc[] hits) {
+        final long[] result = new long[hits.length];
+        for (int i = 0; i < hits.length; i++) {
+            result[i] = ((long) hits[i].doc << 32) | i;
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+}
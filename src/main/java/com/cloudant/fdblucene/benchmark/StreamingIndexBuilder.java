@@ -0,0 +1,166 @@
+package com.cloudant.fdblucene.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexWriterConfig.OpenMode;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.store.Directory;
+
+import com.cloudant.fdblucene.benchmark.DocumentGenerator.DocSize;
+
+/**
+ * Build an index of generated documents without holding them in memory,
+ * committing every commitEvery documents.
+ *
+ * Each commit records how far the build got in its user data, so calling
+ * build again on the same directory, after an interruption or with a larger
+ * count, carries on from the last commit. Documents are a function of their
+ * ordinal, so a resumed build holds the same documents an uninterrupted one
+ * would, though not necessarily in the same order. Documents added since the
+ * last commit are rolled back rather than committed on close, as a later
+ * resume would add them again.
+ *
+ */
+public final class StreamingIndexBuilder {
+
+    public static final String NEXT_ORDINAL_KEY = "scale.nextOrdinal";
+    public static final String SPEC_KEY = "scale.spec";
+
+    private final String generator;
+    private final long seed;
+    private final DocSize size;
+    private final int threads;
+    private final long commitEvery;
+
+    public StreamingIndexBuilder(final String generator, final long seed, final DocSize size, final int threads,
+            final long commitEvery) {
+        this.generator = generator;
+        this.seed = seed;
+        this.size = size;
+        this.threads = threads;
+        this.commitEvery = commitEvery;
+    }
+
+    /**
+     * Bring the index in dir up to docs documents.
+     *
+     * @return the number of documents added by this call.
+     */
+    public long build(final Directory dir, final IndexWriterConfig config, final long docs) throws IOException {
+        config.setOpenMode(OpenMode.CREATE_OR_APPEND);
+        config.setCommitOnClose(false);
+        try (final IndexWriter writer = new IndexWriter(dir, config)) {
+            final long first = nextOrdinal(writer.getLiveCommitData());
+            if (first >= docs) {
+                return 0;
+            }
+            if (first > 0) {
+                System.out.println(String.format("Resuming build at %d of %d docs", first, docs));
+            }
+
+            final List<DocumentGenerator> generators = new ArrayList<>();
+            final ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                for (int i = 0; i < threads; i++) {
+                    generators.add(DocumentGenerator.create(generator, seed, size, first + i, threads));
+                }
+                final long start = System.nanoTime();
+                long next = first;
+                while (next < docs) {
+                    final long end = Math.min(docs, next + commitEvery);
+                    // between them the generators cover every ordinal, so
+                    // each adding those below end fills [next, end)
+                    final List<Future<Void>> futures = new ArrayList<>();
+                    for (final DocumentGenerator documents : generators) {
+                        futures.add(executor.submit(() -> {
+                            while (documents.ordinal() < end) {
+                                writer.addDocument(documents.next());
+                            }
+                            return null;
+                        }));
+                    }
+                    for (final Future<Void> future : futures) {
+                        await(future);
+                    }
+                    final Map<String, String> commitData = new HashMap<>();
+                    commitData.put(SPEC_KEY, spec());
+                    commitData.put(NEXT_ORDINAL_KEY, Long.toString(end));
+                    writer.setLiveCommitData(commitData.entrySet());
+                    writer.commit();
+                    next = end;
+
+                    final double seconds = (System.nanoTime() - start) / 1e9;
+                    System.out.println(String.format("Indexed %d of %d docs, %.0f docs/sec", next, docs,
+                            (next - first) / seconds));
+                }
+            } finally {
+                executor.shutdownNow();
+                for (final DocumentGenerator documents : generators) {
+                    documents.close();
+                }
+            }
+            return docs - first;
+        }
+    }
+
+    /**
+     * @return the number of documents the index in dir holds, 0 if it has
+     *         none yet.
+     * @throws IOException if it was built with other settings.
+     */
+    public long built(final Directory dir) throws IOException {
+        if (!DirectoryReader.indexExists(dir)) {
+            return 0;
+        }
+        return nextOrdinal(SegmentInfos.readLatestCommit(dir).getUserData().entrySet());
+    }
+
+    private long nextOrdinal(final Iterable<Map.Entry<String, String>> commitData) throws IOException {
+        if (commitData == null) {
+            return 0;
+        }
+        String spec = null;
+        long result = 0;
+        for (final Map.Entry<String, String> entry : commitData) {
+            if (SPEC_KEY.equals(entry.getKey())) {
+                spec = entry.getValue();
+            } else if (NEXT_ORDINAL_KEY.equals(entry.getKey())) {
+                result = Long.parseLong(entry.getValue());
+            }
+        }
+        if (result > 0 && !spec().equals(spec)) {
+            throw new IOException("Index was built as " + spec + ", not " + spec());
+        }
+        return result;
+    }
+
+    private String spec() {
+        return String.format("%s-%s-seed-%d", generator, size, seed);
+    }
+
+    private static void await(final Future<Void> future) throws IOException {
+        try {
+            future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+}
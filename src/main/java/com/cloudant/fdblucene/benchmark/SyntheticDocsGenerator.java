@@ -0,0 +1,41 @@
+package com.cloudant.fdblucene.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.lucene.document.Document;
+
+import com.cloudant.fdblucene.couchdb.DocumentBuilder;
+import com.cloudant.fdblucene.couchdb.SyntheticDocs;
+
+/**
+ * CouchDB-shaped documents from SyntheticDocs, mapped onto fields by the same
+ * DocumentBuilder the CouchDB indexer uses. The size sets the length of the
+ * description; the rest of the document is a few hundred bytes regardless.
+ *
+ */
+final class SyntheticDocsGenerator extends DocumentGenerator {
+
+    /** Vocabulary words average six letters, plus a space. */
+    private static final int CHARS_PER_WORD = 7;
+
+    private final SyntheticDocs docs;
+    private final List<DocumentBuilder> builders = new ArrayList<>();
+
+    SyntheticDocsGenerator(final long seed, final DocSize size, final long first, final int stride) {
+        super(seed, size, first, stride);
+        this.docs = new SyntheticDocs(seed);
+    }
+
+    @Override
+    protected Document generate(final int slot, final long ordinal, final Random random,
+            final int targetChars) {
+        if (slot == builders.size()) {
+            builders.add(new DocumentBuilder());
+        }
+        final int words = targetChars < 0 ? -1 : Math.max(1, targetChars / CHARS_PER_WORD);
+        return builders.get(slot).build(docs.get(ordinal, words));
+    }
+
+}
@@ -0,0 +1,75 @@
+package com.cloudant.fdblucene.benchmark;
+
+import java.util.Random;
+
+import com.cloudant.fdblucene.couchdb.SyntheticDocs;
+
+/**
+ * Zipf distributed ranks over [0, n), using the method from Gray et al.,
+ * "Quickly Generating Billion-Record Synthetic Databases", as YCSB does.
+ * Rank 0 is the most popular. A theta of 0 is uniform; 0.99 is YCSB's
+ * default skew.
+ *
+ * Setup is O(n), sampling is O(1) and the instance is immutable, so threads
+ * can share one as long as each brings its own Random.
+ *
+ */
+public final class Zipfian {
+
+    private final long n;
+    private final double theta;
+    private final double alpha;
+    private final double zetan;
+    private final double eta;
+
+    public Zipfian(final long n, final double theta) {
+        if (n < 1) {
+            throw new IllegalArgumentException("n must be at least 1");
+        }
+        if (theta < 0 || theta >= 1) {
+            throw new IllegalArgumentException("theta must be in [0, 1)");
+        }
+        this.n = n;
+        this.theta = theta;
+        this.alpha = 1.0 / (1.0 - theta);
+        this.zetan = zeta(n, theta);
+        this.eta = (1 - Math.pow(2.0 / n, 1 - theta)) / (1 - zeta(2, theta) / zetan);
+    }
+
+    /**
+     * @return a rank in [0, n), 0 the most likely.
+     */
+    public long next(final Random random) {
+        final double u = random.nextDouble();
+        final double uz = u * zetan;
+        if (uz < 1.0) {
+            return 0;
+        }
+        if (n > 1 && uz < 1.0 + Math.pow(0.5, theta)) {
+            return 1;
+        }
+        return Math.min(n - 1, (long) (n * Math.pow(eta * u - eta + 1, alpha)));
+    }
+
+    /**
+     * @return a value in [0, n) with the same skew as next(), but with the
+     *         popular values spread over the range rather than packed at the
+     *         start of it.
+     */
+    public long nextScrambled(final Random random) {
+        return Math.floorMod(SyntheticDocs.mix(next(random)), n);
+    }
+
+    public long size() {
+        return n;
+    }
+
+    private static double zeta(final long n, final double theta) {
+        double result = 0;
+        for (long i = 1; i <= n; i++) {
+            result += 1 / Math.pow(i, theta);
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,30 @@
+package com.cloudant.fdblucene.couchdb;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Somewhere to read ranges of a CouchDB database's _all_docs from, so an
+ * initial build can fetch several ranges at once.
+ *
+ */
+public interface AllDocsSource extends Closeable {
+
+    /**
+     * @return the database's current update_seq, from which the _changes
+     *         feed covers anything a following _all_docs read misses.
+     */
+    String updateSeq() throws IOException;
+
+    /**
+     * Open one _all_docs?include_docs=true response. The caller closes the
+     * returned reader.
+     *
+     * @param startKey the first _id to include, or null to start at the
+     *                 beginning.
+     * @param endKey   the first _id to exclude, or null to read to the end.
+     */
+    Reader openAllDocs(final String startKey, final String endKey) throws IOException;
+
+}
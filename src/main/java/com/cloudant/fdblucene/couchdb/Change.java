@@ -0,0 +1,63 @@
+package com.cloudant.fdblucene.couchdb;
+
+import org.apache.lucene.document.Document;
+
+/**
+ * One row of a CouchDB _changes feed.
+ *
+ * The document is kept as the JSON text it arrived as, so the parser stage
+ * only has to split the feed into rows and the builder stage does the rest.
+ *
+ */
+public final class Change {
+
+    private final String id;
+    private final String seq;
+    private final boolean deleted;
+    private final String doc;
+    private DocumentBuilder builder;
+    private Document document;
+
+    public Change(final String id, final String seq, final boolean deleted, final String doc) {
+        this.id = id;
+        this.seq = seq;
+        this.deleted = deleted;
+        this.doc = doc;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getSeq() {
+        return seq;
+    }
+
+    public boolean isDeleted() {
+        return deleted;
+    }
+
+    /**
+     * @return the document as JSON text.
+     */
+    public String getDoc() {
+        return doc;
+    }
+
+    DocumentBuilder getBuilder() {
+        return builder;
+    }
+
+    void setBuilder(final DocumentBuilder builder) {
+        this.builder = builder;
+    }
+
+    Document getDocument() {
+        return document;
+    }
+
+    void setDocument(final Document document) {
+        this.document = document;
+    }
+
+}
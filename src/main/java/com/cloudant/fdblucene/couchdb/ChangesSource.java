@@ -0,0 +1,25 @@
+package com.cloudant.fdblucene.couchdb;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+import com.cloudant.fdblucene.couchdb.CouchDBIndexer.Feed;
+
+/**
+ * Somewhere to read a CouchDB _changes response from.
+ *
+ */
+public interface ChangesSource extends Closeable {
+
+    /**
+     * Open one _changes response. The caller closes the returned reader.
+     *
+     * @param since the seq to start after, or null to start at the beginning.
+     * @param feed the feed type to request.
+     * @param timeoutMs how long a longpoll or continuous feed may wait for
+     *        changes.
+     */
+    Reader open(final String since, final Feed feed, final long timeoutMs) throws IOException;
+
+}
@@ -0,0 +1,41 @@
+package com.cloudant.fdblucene.couchdb;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decide when enough changes have been applied to be worth a commit.
+ *
+ */
+public final class CommitPolicy {
+
+    private final long maxDocs;
+    private final long maxIntervalNanos;
+    private long pendingDocs;
+    private long lastCommitNanos = System.nanoTime();
+
+    public CommitPolicy(final long maxDocs, final long maxInterval, final TimeUnit unit) {
+        this.maxDocs = maxDocs;
+        this.maxIntervalNanos = unit.toNanos(maxInterval);
+    }
+
+    public void applied(final long docs) {
+        pendingDocs += docs;
+    }
+
+    public boolean isPending() {
+        return pendingDocs > 0;
+    }
+
+    public boolean isDue() {
+        if (pendingDocs == 0) {
+            return false;
+        }
+        return pendingDocs >= maxDocs || System.nanoTime() - lastCommitNanos >= maxIntervalNanos;
+    }
+
+    public void committed() {
+        pendingDocs = 0;
+        lastCommitNanos = System.nanoTime();
+    }
+
+}
@@ -1,26 +1,25 @@
 package com.cloudant.fdblucene.couchdb;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.Reader;
+import java.io.StringWriter;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
-import org.apache.http.auth.AuthScope;
-import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.CredentialsProvider;
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.BasicCredentialsProvider;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 import org.apache.lucene.codecs.lucene80.Lucene80Codec;
-import org.apache.lucene.document.Document;
-import org.apache.lucene.document.DoublePoint;
-import org.apache.lucene.document.Field.Store;
-import org.apache.lucene.document.StringField;
-import org.apache.lucene.document.TextField;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.store.Directory;
@@ -29,6 +28,8 @@ import com.apple.foundationdb.Database;
 import com.apple.foundationdb.FDB;
 import com.cloudant.fdblucene.FDBDirectory;
 import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 
 /**
  * Index a CouchDB/Cloudant database
@@ -36,30 +37,63 @@ import com.google.gson.stream.JsonReader;
  */
 public final class CouchDBIndexer {
 
+    public enum Feed {
+        NORMAL, LONGPOLL, CONTINUOUS
+    }
+
+    /**
+     * Commit user data key holding the last _changes seq in the commit.
+     */
+    public static final String SEQ_KEY = "couchdb.seq";
+
+    private static final String EMPTY_DOC = "{}";
+
+    private final Feed feed = Feed.valueOf(System.getProperty("feed", "normal").toUpperCase(Locale.ROOT));
+    private final long commitDocs = Long.getLong("commitDocs", 10000);
+    private final long commitIntervalMs = Long.getLong("commitIntervalMs", 10000);
+    private final long progressIntervalMs = Long.getLong("progressIntervalMs", 10000);
+
+    private final int builderThreads = Integer.getInteger("builders", Runtime.getRuntime().availableProcessors());
+    private final int writerThreads = Integer.getInteger("writers", Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    private final int queueCapacity = Integer.getInteger("queue", 1000);
+    private final int batchSize = Integer.getInteger("batch", 100);
+    private final int partitions = Integer.getInteger("partitions", 1);
+    private volatile boolean running = true;
+
     public static void main(String[] args) throws Exception {
-        if (args.length != 5) {
+        if (args.length != 5 && args.length != 2) {
             System.out.println("CouchDBIndexer: username password hostname dbname indexpath");
+            System.out.println("CouchDBIndexer: changesfile indexpath");
+            return;
         }
         final CouchDBIndexer indexer = new CouchDBIndexer();
 
         final IndexWriterConfig config = new IndexWriterConfig();
         config.setUseCompoundFile(false);
         config.setCodec(new Lucene80Codec());
+        // only checkpoints commit, so a failed run leaves nothing unrecorded
+        config.setCommitOnClose(false);
 
         final FileSystem fileSystem = FileSystems.getDefault();
-        final Path path = fileSystem.getPath(args[4]);
+        final Path path = fileSystem.getPath(args[args.length - 1]);
 
         FDB.selectAPIVersion(600);
         final Database db = FDB.instance().open();
         try (final Directory dir = FDBDirectory.open(db,  path);
                 final IndexWriter writer = new IndexWriter(dir, config)) {
 
-            indexer.index(
-                    args[0],
-                    args[1],
-                    args[2],
-                    args[3],
-                    writer);
+            if (args.length == 2) {
+                try (final ChangesSource source = new FileChangesSource(fileSystem.getPath(args[0]))) {
+                    indexer.index(source, writer);
+                }
+            } else {
+                indexer.index(
+                        args[0],
+                        args[1],
+                        args[2],
+                        args[3],
+                        writer);
+            }
         }
     }
 
@@ -69,44 +103,208 @@ public final class CouchDBIndexer {
             final String hostname,
             final String database,
             final IndexWriter writer) throws Exception {
-        final String url = String.format("https://%s/%s/_changes?include_docs=true", hostname, database);
-        final HttpGet httpGet = new HttpGet(url);
+        // hostname may also be a full URL, for example http://localhost:5984
+        final String serverUrl = hostname.contains("://") ? hostname : "https://" + hostname;
+        try (final ChangesSource source = new HttpChangesSource(serverUrl + "/" + database, username, password,
+                Math.max(2, partitions))) {
+            index(source, writer);
+        }
+    }
 
-        try (final CloseableHttpClient httpClient = createHttpClient(username, password, hostname)) {
-            try (CloseableHttpResponse response = httpClient.execute(httpGet)) {
-                if (response.getStatusLine().getStatusCode() != 200) {
-                    throw new IOException("Failed.");
+    /**
+     * Apply the changes from source to writer, starting after the seq
+     * checkpointed in its last commit. An empty index is first built from
+     * _all_docs with the partitions system property's number of requests at
+     * once, if more than one and source can serve them.
+     *
+     * @return the number of changes and documents read.
+     */
+    public long index(final ChangesSource source, final IndexWriter writer) throws IOException {
+        long initial = 0;
+        if (partitions > 1 && source instanceof AllDocsSource && readCheckpoint(writer) == null
+                && writer.getDocStats().maxDoc == 0) {
+            initial = indexAllDocs((AllDocsSource) source, writer, partitions);
+        }
+        String since = readCheckpoint(writer);
+        final CommitPolicy commitPolicy = new CommitPolicy(commitDocs, commitIntervalMs, TimeUnit.MILLISECONDS);
+        final IndexingPipeline pipeline = new IndexingPipeline(
+                writer,
+                builderThreads,
+                writerThreads,
+                queueCapacity,
+                batchSize);
+        // An empty index can take a normal feed as plain appends, as that
+        // lists each document at most once. A continuous response goes on to
+        // stream live updates after the backlog, which may repeat a document.
+        pipeline.setAppend(since == null && writer.getDocStats().maxDoc == 0 && feed == Feed.NORMAL);
+
+        try {
+            do {
+                try (final JsonReader jsonReader = new JsonReader(source.open(since, feed, commitIntervalMs))) {
+                    since = indexResults(jsonReader, writer, pipeline, commitPolicy, since);
                 }
-                final Reader inputStreamReader = new InputStreamReader(response.getEntity().getContent(), "UTF-8");
-                try (final JsonReader jsonReader = new JsonReader(inputStreamReader)) {
-                    indexResults(jsonReader, writer);
+                checkpoint(writer, pipeline, commitPolicy, since);
+                pipeline.setAppend(false);
+            } while (feed != Feed.NORMAL && running);
+        } finally {
+            pipeline.close();
+        }
+        pipeline.report();
+        return initial + pipeline.meters()[0].count();
+    }
+
+    /**
+     * Build an empty index from source's _all_docs, split by the first two
+     * characters of _id into partitions ranges fetched at once, then commit
+     * with the update_seq read before the fetch as the checkpoint, so that
+     * {@link #index(ChangesSource, IndexWriter)} picks up whatever changed
+     * meanwhile. The ranges are even for the random hex _ids CouchDB
+     * generates; other _ids all still fall in one range or another.
+     *
+     * Nothing is committed until every range has been indexed, and if any
+     * range fails everything the others added is deleted again, so an
+     * interrupted build starts over. Each range's progress is printed every
+     * progressIntervalMs (system property, default 10000).
+     *
+     * @return the number of documents read.
+     */
+    public long indexAllDocs(final AllDocsSource source, final IndexWriter writer, final int partitions)
+            throws IOException {
+        if (partitions < 1 || partitions > 256) {
+            throw new IllegalArgumentException("partitions must be between 1 and 256.");
+        }
+        if (writer.getDocStats().maxDoc != 0) {
+            throw new IOException("_all_docs can only be fetched into an empty index.");
+        }
+        final String seq = source.updateSeq();
+        final String[] bounds = new String[partitions + 1];
+        for (int i = 1; i < partitions; i++) {
+            bounds[i] = String.format("%02x", i * 256 / partitions);
+        }
+        final StageMeter[] meters = new StageMeter[partitions];
+        final IndexingPipeline pipeline = new IndexingPipeline(
+                writer,
+                builderThreads,
+                writerThreads,
+                queueCapacity,
+                batchSize);
+        pipeline.setAppend(true);
+        final ExecutorService fetchers = Executors.newFixedThreadPool(partitions);
+        try {
+            final List<Future<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < partitions; i++) {
+                final String startKey = bounds[i];
+                final String endKey = bounds[i + 1];
+                final StageMeter meter = new StageMeter(String.format("_all_docs [%s, %s)",
+                        startKey == null ? "" : startKey, endKey == null ? "" : endKey));
+                meters[i] = meter;
+                futures.add(fetchers.submit(() -> {
+                    try (final JsonReader jsonReader = new JsonReader(source.openAllDocs(startKey, endKey))) {
+                        indexRows(jsonReader, pipeline, meter);
+                    }
+                    return null;
+                }));
+            }
+            for (final Future<Void> future : futures) {
+                while (!await(future, progressIntervalMs)) {
+                    for (final StageMeter meter : meters) {
+                        System.out.println(meter);
+                    }
                 }
             }
+        } catch (final IOException | RuntimeException e) {
+            fetchers.shutdownNow();
+            try {
+                pipeline.close();
+            } catch (final IOException | RuntimeException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            discard(writer, e);
+            throw e;
+        }
+        fetchers.shutdownNow();
+        try {
+            pipeline.close();
+        } catch (final IOException | RuntimeException e) {
+            discard(writer, e);
+            throw e;
         }
+        writer.setLiveCommitData(Collections.singletonMap(SEQ_KEY, seq).entrySet());
         writer.commit();
+        for (final StageMeter meter : meters) {
+            System.out.println(meter);
+        }
+        pipeline.report();
+        return pipeline.meters()[0].count();
+    }
+
+    /**
+     * Ask a continuous or longpoll {@link #index} to return after the current
+     * request.
+     */
+    public void stop() {
+        running = false;
+    }
+
+    private String indexResults(
+            final JsonReader jsonReader,
+            final IndexWriter writer,
+            final IndexingPipeline pipeline,
+            final CommitPolicy commitPolicy,
+            final String since) throws IOException {
+        final StringWriter buffer = new StringWriter();
+        final Set<String> unflushed = new HashSet<>();
+        String lastSeq = since;
+
+        if (feed == Feed.CONTINUOUS) {
+            // One change per line, finishing with a last_seq line on timeout.
+            jsonReader.setLenient(true);
+            while (jsonReader.peek() != JsonToken.END_DOCUMENT) {
+                final Change change = readChange(jsonReader, buffer, EMPTY_DOC);
+                if (change.getId() == null) {
+                    return change.getSeq();
+                }
+                lastSeq = apply(change, writer, pipeline, commitPolicy, unflushed);
+            }
+            return lastSeq;
+        }
+
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            final String name = jsonReader.nextName();
+            if ("results".equals(name)) {
+                jsonReader.beginArray();
+                while (jsonReader.hasNext()) {
+                    lastSeq = apply(readChange(jsonReader, buffer, EMPTY_DOC), writer, pipeline, commitPolicy,
+                            unflushed);
+                }
+                jsonReader.endArray();
+            } else if ("last_seq".equals(name)) {
+                lastSeq = readSeq(jsonReader, buffer);
+            } else {
+                jsonReader.skipValue();
+            }
+        }
+        jsonReader.endObject();
+        return lastSeq;
     }
 
-    private void indexResults(final JsonReader jsonReader, final IndexWriter writer) throws IOException {
+    private void indexRows(
+            final JsonReader jsonReader,
+            final IndexingPipeline pipeline,
+            final StageMeter meter) throws IOException {
+        final StringWriter buffer = new StringWriter();
         jsonReader.beginObject();
         while (jsonReader.hasNext()) {
-            if ("results".equals(jsonReader.nextName())) {
+            if ("rows".equals(jsonReader.nextName())) {
                 jsonReader.beginArray();
                 while (jsonReader.hasNext()) {
-                    jsonReader.beginObject();
-                    while (jsonReader.hasNext()) {
-                        if ("doc".equals(jsonReader.nextName())) {
-                            final Document doc = new Document();
-                            jsonReader.beginObject();
-                            while (jsonReader.hasNext()) {
-                                buildDocument(null, jsonReader, doc);
-                            }
-                            jsonReader.endObject();
-                            writer.addDocument(doc);
-                        } else {
-                            jsonReader.skipValue();
-                        }
+                    final Change change = readChange(jsonReader, buffer, null);
+                    if (change.getDoc() == null) {
+                        continue;
                     }
-                    jsonReader.endObject();
+                    pipeline.submit(change);
+                    meter.mark(1);
                 }
                 jsonReader.endArray();
             } else {
@@ -116,49 +314,189 @@ public final class CouchDBIndexer {
         jsonReader.endObject();
     }
 
-    private void buildDocument(final String prefix, final JsonReader in, final Document out) throws IOException {
+    private String apply(
+            final Change change,
+            final IndexWriter writer,
+            final IndexingPipeline pipeline,
+            final CommitPolicy commitPolicy,
+            final Set<String> unflushed) throws IOException {
+        // The pipeline reorders changes, so make sure an earlier revision of
+        // the same document has landed before sending the next one.
+        if (!pipeline.isAppend() && !unflushed.add(change.getId())) {
+            pipeline.flush();
+            unflushed.clear();
+            unflushed.add(change.getId());
+        }
+        pipeline.submit(change);
+        commitPolicy.applied(1);
+        if (commitPolicy.isDue()) {
+            checkpoint(writer, pipeline, commitPolicy, change.getSeq());
+            unflushed.clear();
+        }
+        return change.getSeq();
+    }
+
+    /**
+     * Read one _changes or _all_docs row without building a tree of it: the
+     * document is copied out as JSON text for a builder thread to parse. A
+     * continuous feed's closing last_seq row comes back as a change with a
+     * null id and the last seq.
+     *
+     * @param missingDoc the document to give a row without one.
+     */
+    private static Change readChange(final JsonReader in, final StringWriter buffer, final String missingDoc)
+            throws IOException {
+        String id = null;
+        String seq = null;
+        boolean deleted = false;
+        String doc = missingDoc;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+            case "id":
+                id = in.nextString();
+                break;
+            case "seq":
+            case "last_seq":
+                seq = readSeq(in, buffer);
+                break;
+            case "deleted":
+                deleted = in.nextBoolean();
+                break;
+            case "doc":
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                } else {
+                    doc = copy(in, buffer);
+                }
+                break;
+            default:
+                in.skipValue();
+                break;
+            }
+        }
+        in.endObject();
+        return new Change(id, seq, deleted, doc);
+    }
+
+    private static String readSeq(final JsonReader in, final StringWriter buffer) throws IOException {
+        // CouchDB 1.x uses integers, later versions opaque strings.
         switch (in.peek()) {
         case STRING:
-            if (prefix.startsWith("_")) {
-                out.add(new StringField(prefix, in.nextString(), Store.YES));
-            } else {
-                out.add(new TextField(prefix, in.nextString(), Store.YES));
-            }
-            break;
-        case BOOLEAN:
-            out.add(new StringField(prefix, Boolean.toString(in.nextBoolean()), Store.YES));
-            break;
         case NUMBER:
-            out.add(new DoublePoint(prefix, in.nextDouble()));
-            break;
+            return in.nextString();
+        default:
+            return copy(in, buffer);
+        }
+    }
+
+    /**
+     * @return the next value of in as compact JSON text.
+     */
+    private static String copy(final JsonReader in, final StringWriter buffer) throws IOException {
+        buffer.getBuffer().setLength(0);
+        final JsonWriter out = new JsonWriter(buffer);
+        out.setLenient(true);
+        copy(in, out);
+        out.flush();
+        return buffer.toString();
+    }
+
+    private static void copy(final JsonReader in, final JsonWriter out) throws IOException {
+        switch (in.peek()) {
         case BEGIN_OBJECT:
             in.beginObject();
+            out.beginObject();
             while (in.hasNext()) {
-                buildDocument(prefix, in, out);
+                out.name(in.nextName());
+                copy(in, out);
             }
             in.endObject();
+            out.endObject();
             break;
         case BEGIN_ARRAY:
             in.beginArray();
+            out.beginArray();
             while (in.hasNext()) {
-                buildDocument(prefix, in, out);
+                copy(in, out);
             }
             in.endArray();
+            out.endArray();
             break;
-        case NAME:
-            final String name = in.nextName();
-            buildDocument(prefix == null ? name : String.format("%s.%s",  prefix, name), in, out);
+        case STRING:
+            out.value(in.nextString());
             break;
-        default:
-            in.skipValue();
+        case NUMBER:
+            out.jsonValue(in.nextString());
+            break;
+        case BOOLEAN:
+            out.value(in.nextBoolean());
             break;
+        case NULL:
+            in.nextNull();
+            out.nullValue();
+            break;
+        default:
+            throw new IOException("Unexpected " + in.peek() + " at " + in.getPath());
+        }
+    }
+
+    private String readCheckpoint(final IndexWriter writer) {
+        final Iterable<Map.Entry<String, String>> commitData = writer.getLiveCommitData();
+        if (commitData != null) {
+            for (final Map.Entry<String, String> entry : commitData) {
+                if (SEQ_KEY.equals(entry.getKey())) {
+                    return entry.getValue();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Delete whatever a failed _all_docs build added, so that no later commit
+     * records it.
+     */
+    private static void discard(final IndexWriter writer, final Exception failure) {
+        try {
+            writer.deleteAll();
+        } catch (final IOException | RuntimeException e) {
+            failure.addSuppressed(e);
         }
     }
 
-    private CloseableHttpClient createHttpClient(final String username, final String password, final String hostname) {
-        final CredentialsProvider credsProvider = new BasicCredentialsProvider();
-        credsProvider.setCredentials(new AuthScope(hostname, 443), new UsernamePasswordCredentials(username, password));
-        return HttpClients.custom().setDefaultCredentialsProvider(credsProvider).build();
+    /**
+     * @return false if future is still running after timeoutMs.
+     */
+    private static boolean await(final Future<Void> future, final long timeoutMs) throws IOException {
+        try {
+            future.get(timeoutMs, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (final TimeoutException e) {
+            return false;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while indexing.", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Fetching _all_docs failed.", e.getCause());
+        }
+    }
+
+    private void checkpoint(
+            final IndexWriter writer,
+            final IndexingPipeline pipeline,
+            final CommitPolicy commitPolicy,
+            final String seq) throws IOException {
+        if (seq == null || (!commitPolicy.isPending() && seq.equals(readCheckpoint(writer)))) {
+            return;
+        }
+        pipeline.flush();
+        writer.setLiveCommitData(Collections.singletonMap(SEQ_KEY, seq).entrySet());
+        writer.commit();
+        commitPolicy.committed();
     }
 
 }
@@ -0,0 +1,203 @@
+package com.cloudant.fdblucene.couchdb;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.DoublePoint;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.util.BytesRef;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonReader;
+
+/**
+ * Map a CouchDB document onto Lucene fields.
+ *
+ * A builder reuses its Document, field names and Field instances from one
+ * build to the next, so it is not thread safe and the returned Document is
+ * only valid until the next call to build. Documents can be built from a
+ * parsed JsonObject or straight from a JsonReader positioned at one, without
+ * the tree in between.
+ *
+ */
+public final class DocumentBuilder {
+
+    /**
+     * Stop remembering new field paths after this many, in case a database
+     * uses data as keys.
+     */
+    private static final int MAX_PATHS = 10000;
+
+    private static final FieldType DOUBLE_POINT_TYPE = new FieldType();
+
+    static {
+        DOUBLE_POINT_TYPE.setDimensions(1, Double.BYTES);
+        DOUBLE_POINT_TYPE.freeze();
+    }
+
+    private final Document document = new Document();
+    private final FieldPath root = new FieldPath(null);
+    private final List<FieldPath> used = new ArrayList<>();
+    private int paths;
+
+    public Document build(final JsonObject in) {
+        reset();
+        buildDocument(root, in);
+        return document;
+    }
+
+    /**
+     * Build from the next value of in, which should be an object.
+     */
+    public Document build(final JsonReader in) throws IOException {
+        reset();
+        buildDocument(root, in);
+        return document;
+    }
+
+    private void reset() {
+        for (final FieldPath path : used) {
+            path.reset();
+        }
+        used.clear();
+        document.clear();
+    }
+
+    private void buildDocument(final FieldPath path, final JsonElement in) {
+        if (in.isJsonPrimitive()) {
+            final JsonPrimitive primitive = in.getAsJsonPrimitive();
+            if (primitive.isString()) {
+                document.add(path.nextStringField(primitive.getAsString()));
+            } else if (primitive.isBoolean()) {
+                document.add(path.nextKeywordField(primitive.getAsBoolean() ? "true" : "false"));
+            } else if (primitive.isNumber()) {
+                document.add(path.nextDoubleField(primitive.getAsDouble()));
+            }
+        } else if (in.isJsonObject()) {
+            for (final Map.Entry<String, JsonElement> entry : in.getAsJsonObject().entrySet()) {
+                buildDocument(child(path, entry.getKey()), entry.getValue());
+            }
+        } else if (in.isJsonArray()) {
+            for (final JsonElement element : in.getAsJsonArray()) {
+                buildDocument(path, element);
+            }
+        }
+    }
+
+    private void buildDocument(final FieldPath path, final JsonReader in) throws IOException {
+        switch (in.peek()) {
+        case STRING:
+            document.add(path.nextStringField(in.nextString()));
+            break;
+        case BOOLEAN:
+            document.add(path.nextKeywordField(in.nextBoolean() ? "true" : "false"));
+            break;
+        case NUMBER:
+            document.add(path.nextDoubleField(in.nextDouble()));
+            break;
+        case BEGIN_OBJECT:
+            in.beginObject();
+            while (in.hasNext()) {
+                buildDocument(child(path, in.nextName()), in);
+            }
+            in.endObject();
+            break;
+        case BEGIN_ARRAY:
+            in.beginArray();
+            while (in.hasNext()) {
+                buildDocument(path, in);
+            }
+            in.endArray();
+            break;
+        default:
+            in.skipValue();
+            break;
+        }
+    }
+
+    private FieldPath child(final FieldPath parent, final String name) {
+        FieldPath result = parent.children.get(name);
+        if (result == null) {
+            result = new FieldPath(parent.path == null ? name : parent.path + '.' + name);
+            if (paths < MAX_PATHS) {
+                parent.children.put(name, result);
+                paths++;
+            }
+        }
+        if (!result.inUse) {
+            result.inUse = true;
+            used.add(result);
+        }
+        return result;
+    }
+
+    /**
+     * An interned dotted field name along with the Field instances used for it
+     * in the current document.
+     */
+    private static final class FieldPath {
+        private final String path;
+        private final boolean keyword;
+        private final Map<String, FieldPath> children = new HashMap<>();
+        private final List<Field> keywordFields = new ArrayList<>(1);
+        private final List<Field> textFields = new ArrayList<>(1);
+        private final List<Field> doubleFields = new ArrayList<>(1);
+        private int keywordsUsed;
+        private int textsUsed;
+        private int doublesUsed;
+        private boolean inUse;
+
+        private FieldPath(final String path) {
+            this.path = path;
+            this.keyword = path != null && path.startsWith("_");
+        }
+
+        private Field nextStringField(final String value) {
+            return keyword ? nextKeywordField(value) : nextTextField(value);
+        }
+
+        private Field nextKeywordField(final String value) {
+            if (keywordsUsed == keywordFields.size()) {
+                keywordFields.add(new Field(path, value, StringField.TYPE_STORED));
+            }
+            final Field result = keywordFields.get(keywordsUsed++);
+            result.setStringValue(value);
+            return result;
+        }
+
+        private Field nextTextField(final String value) {
+            if (textsUsed == textFields.size()) {
+                textFields.add(new Field(path, value, TextField.TYPE_STORED));
+            }
+            final Field result = textFields.get(textsUsed++);
+            result.setStringValue(value);
+            return result;
+        }
+
+        private Field nextDoubleField(final double value) {
+            if (doublesUsed == doubleFields.size()) {
+                doubleFields.add(new Field(path, new BytesRef(new byte[Double.BYTES]), DOUBLE_POINT_TYPE));
+            }
+            final Field result = doubleFields.get(doublesUsed++);
+            DoublePoint.encodeDimension(value, result.binaryValue().bytes, 0);
+            return result;
+        }
+
+        private void reset() {
+            keywordsUsed = 0;
+            textsUsed = 0;
+            doublesUsed = 0;
+            inUse = false;
+        }
+    }
+
+}
@@ -0,0 +1,35 @@
+package com.cloudant.fdblucene.couchdb;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import com.cloudant.fdblucene.couchdb.CouchDBIndexer.Feed;
+
+/**
+ * Replay a recorded _changes?include_docs=true response from a file.
+ *
+ */
+public final class FileChangesSource implements ChangesSource {
+
+    private final Path path;
+
+    public FileChangesSource(final Path path) {
+        this.path = path;
+    }
+
+    @Override
+    public Reader open(final String since, final Feed feed, final long timeoutMs) throws IOException {
+        if (feed != Feed.NORMAL) {
+            throw new IOException("Recorded changes can only be replayed as a normal feed.");
+        }
+        return Files.newBufferedReader(path, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() {
+    }
+
+}
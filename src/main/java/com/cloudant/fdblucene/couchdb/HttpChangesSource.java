@@ -0,0 +1,158 @@
+package com.cloudant.fdblucene.couchdb;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.util.Locale;
+
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+
+import com.cloudant.fdblucene.couchdb.CouchDBIndexer.Feed;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * Read _changes and _all_docs from a CouchDB/Cloudant server, or anything
+ * that looks like one.
+ *
+ * Requests share a pool of keep-alive connections and ask for gzip encoded
+ * responses, which the client decodes.
+ *
+ */
+public final class HttpChangesSource implements ChangesSource, AllDocsSource {
+
+    private final String databaseUrl;
+    private final CloseableHttpClient httpClient;
+
+    /**
+     * @param databaseUrl the database URL, for example
+     *        https://account.cloudant.com/dbname
+     * @param username the user to authenticate as, or null for none.
+     * @param password the password of the user.
+     */
+    public HttpChangesSource(final String databaseUrl, final String username, final String password) {
+        this(databaseUrl, username, password, 2);
+    }
+
+    /**
+     * @param maxConnections the number of requests that can be open at once.
+     */
+    public HttpChangesSource(final String databaseUrl, final String username, final String password,
+            final int maxConnections) {
+        this.databaseUrl = databaseUrl;
+        this.httpClient = createHttpClient(URI.create(databaseUrl), username, password, maxConnections);
+    }
+
+    @Override
+    public Reader open(final String since, final Feed feed, final long timeoutMs) throws IOException {
+        return open(changesUrl(since, feed, timeoutMs), false);
+    }
+
+    @Override
+    public String updateSeq() throws IOException {
+        try (final Reader reader = open(databaseUrl, true)) {
+            final JsonObject info = new JsonParser().parse(reader).getAsJsonObject();
+            final JsonElement seq = info.get("update_seq");
+            // CouchDB 1.x uses integers, later versions opaque strings.
+            return seq.isJsonPrimitive() ? seq.getAsString() : seq.toString();
+        }
+    }
+
+    @Override
+    public Reader openAllDocs(final String startKey, final String endKey) throws IOException {
+        final StringBuilder url = new StringBuilder(databaseUrl);
+        url.append("/_all_docs?include_docs=true&inclusive_end=false");
+        if (startKey != null) {
+            url.append("&startkey=").append(URLEncoder.encode(jsonString(startKey), "UTF-8"));
+        }
+        if (endKey != null) {
+            url.append("&endkey=").append(URLEncoder.encode(jsonString(endKey), "UTF-8"));
+        }
+        return open(url.toString(), true);
+    }
+
+    /**
+     * @param reuse read any unread rest of the response on close, so that its
+     *              connection goes back to the pool. Not for feeds that only
+     *              end on a timeout.
+     */
+    private Reader open(final String url, final boolean reuse) throws IOException {
+        final CloseableHttpResponse response = httpClient.execute(new HttpGet(url));
+        if (response.getStatusLine().getStatusCode() != 200) {
+            response.close();
+            throw new IOException("Failed.");
+        }
+        return new FilterReader(new InputStreamReader(response.getEntity().getContent(), "UTF-8")) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    if (reuse) {
+                        EntityUtils.consume(response.getEntity());
+                    }
+                    super.close();
+                } finally {
+                    response.close();
+                }
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        httpClient.close();
+    }
+
+    private String changesUrl(final String since, final Feed feed, final long timeoutMs) throws IOException {
+        final StringBuilder result = new StringBuilder(databaseUrl);
+        result.append("/_changes?include_docs=true");
+        if (feed != Feed.NORMAL) {
+            result.append("&feed=").append(feed.name().toLowerCase(Locale.ROOT));
+            result.append("&timeout=").append(timeoutMs);
+        }
+        if (since != null) {
+            result.append("&since=").append(URLEncoder.encode(since, "UTF-8"));
+        }
+        return result.toString();
+    }
+
+    private static String jsonString(final String value) {
+        return new JsonPrimitive(value).toString();
+    }
+
+    private static CloseableHttpClient createHttpClient(final URI uri, final String username, final String password,
+            final int maxConnections) {
+        // content compression, adding Accept-Encoding and decoding gzip, is on by default
+        final HttpClientBuilder builder = HttpClients.custom()
+                .setMaxConnPerRoute(maxConnections)
+                .setMaxConnTotal(maxConnections);
+        if (username != null) {
+            final CredentialsProvider credsProvider = new BasicCredentialsProvider();
+            credsProvider.setCredentials(new AuthScope(uri.getHost(), port(uri)),
+                    new UsernamePasswordCredentials(username, password));
+            builder.setDefaultCredentialsProvider(credsProvider);
+        }
+        return builder.build();
+    }
+
+    private static int port(final URI uri) {
+        if (uri.getPort() != -1) {
+            return uri.getPort();
+        }
+        return "https".equals(uri.getScheme()) ? 443 : 80;
+    }
+
+}
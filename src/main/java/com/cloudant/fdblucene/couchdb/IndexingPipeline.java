@@ -0,0 +1,296 @@
+package com.cloudant.fdblucene.couchdb;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+
+import com.google.gson.stream.JsonReader;
+
+/**
+ * Staged indexing of parsed CouchDB changes.
+ *
+ * The caller is the parser stage and hands each change to
+ * {@link #submit(Change)}, with its document still as JSON text. A pool of
+ * builder threads parses those straight into Lucene documents and a pool of
+ * writer threads applies them in batches. Both
+ * hand-offs go through bounded queues so a slow stage holds back the ones in
+ * front of it.
+ *
+ * In append mode every change is assumed to be a new document and batches go
+ * to {@link IndexWriter#addDocuments(Iterable)}. Otherwise each change updates
+ * or deletes the document with the same _id.
+ *
+ */
+public final class IndexingPipeline implements AutoCloseable {
+
+    private static final Change END_OF_INPUT = new Change(null, null, false, null);
+    private static final Change END_OF_DOCUMENTS = new Change(null, null, false, null);
+    private static final long OFFER_TIMEOUT_MS = 100;
+
+    private final IndexWriter writer;
+    private final int batchSize;
+    private final int maxDocumentBuilders;
+
+    private final BlockingQueue<Change> parsed;
+    private final BlockingQueue<Change> built;
+    private final BlockingQueue<DocumentBuilder> documentBuilders;
+    private final AtomicInteger createdDocumentBuilders = new AtomicInteger();
+    private final ExecutorService builders;
+    private final ExecutorService writers;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final Object drained = new Object();
+    private final AtomicLong applied = new AtomicLong();
+    private final AtomicLong submitted = new AtomicLong();
+    private volatile boolean append = true;
+
+    private final StageMeter parseMeter = new StageMeter("parse");
+    private final StageMeter buildMeter = new StageMeter("build");
+    private final StageMeter writeMeter = new StageMeter("write");
+
+    private boolean closed;
+
+    public IndexingPipeline(
+            final IndexWriter writer,
+            final int builderThreads,
+            final int writerThreads,
+            final int queueCapacity,
+            final int batchSize) {
+        if (builderThreads < 1 || writerThreads < 1 || queueCapacity < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("Pipeline sizes must be positive.");
+        }
+        this.writer = writer;
+        this.batchSize = batchSize;
+        this.parsed = new ArrayBlockingQueue<>(queueCapacity);
+        this.built = new ArrayBlockingQueue<>(queueCapacity);
+        // Each document in flight holds on to the builder that made it, so
+        // allow enough builders for every queue slot and batch to be full.
+        this.maxDocumentBuilders = queueCapacity + builderThreads + writerThreads * batchSize;
+        this.documentBuilders = new ArrayBlockingQueue<>(maxDocumentBuilders);
+        this.builders = Executors.newFixedThreadPool(builderThreads);
+        this.writers = Executors.newFixedThreadPool(writerThreads);
+        for (int i = 0; i < builderThreads; i++) {
+            builders.execute(this::runBuilder);
+        }
+        for (int i = 0; i < writerThreads; i++) {
+            writers.execute(this::runWriter);
+        }
+    }
+
+    /**
+     * Hand over the next change. Several parser threads may submit at once,
+     * in which case their changes are applied in no particular order.
+     */
+    public void submit(final Change change) throws IOException {
+        parseMeter.mark(1);
+        submitted.incrementAndGet();
+        transfer(parsed, change);
+    }
+
+    /**
+     * Choose between adding every document and updating by _id. Only change
+     * this while the pipeline is flushed.
+     */
+    public void setAppend(final boolean append) {
+        this.append = append;
+    }
+
+    public boolean isAppend() {
+        return append;
+    }
+
+    /**
+     * Wait for every change submitted so far to be applied to the IndexWriter.
+     */
+    public void flush() throws IOException {
+        try {
+            synchronized (drained) {
+                while (applied.get() < submitted.get()) {
+                    checkFailure();
+                    drained.wait(OFFER_TIMEOUT_MS);
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while indexing.", e);
+        }
+        checkFailure();
+    }
+
+    /**
+     * Wait for every submitted document to reach the IndexWriter.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        transfer(parsed, END_OF_INPUT);
+        await(builders);
+        transfer(built, END_OF_DOCUMENTS);
+        await(writers);
+        checkFailure();
+    }
+
+    public StageMeter[] meters() {
+        return new StageMeter[] { parseMeter, buildMeter, writeMeter };
+    }
+
+    public void report() {
+        for (final StageMeter meter : meters()) {
+            System.out.println(meter);
+        }
+    }
+
+    private void runBuilder() {
+        try {
+            while (true) {
+                final Change change = parsed.take();
+                if (change == END_OF_INPUT) {
+                    parsed.put(END_OF_INPUT);
+                    return;
+                }
+                if (!change.isDeleted()) {
+                    final DocumentBuilder builder = borrowDocumentBuilder();
+                    change.setBuilder(builder);
+                    try (final JsonReader reader = new JsonReader(new StringReader(change.getDoc()))) {
+                        change.setDocument(builder.build(reader));
+                    }
+                }
+                buildMeter.mark(1);
+                transfer(built, change);
+            }
+        } catch (final Throwable t) {
+            failure.compareAndSet(null, t);
+        }
+    }
+
+    private void runWriter() {
+        final List<Change> batch = new ArrayList<>(batchSize);
+        final List<Document> docs = new ArrayList<>(batchSize);
+        try {
+            boolean done = false;
+            while (!done) {
+                batch.add(built.take());
+                built.drainTo(batch, batchSize - 1);
+                final int end = batch.indexOf(END_OF_DOCUMENTS);
+                if (end != -1) {
+                    batch.subList(end, batch.size()).clear();
+                    built.put(END_OF_DOCUMENTS);
+                    done = true;
+                }
+                if (!batch.isEmpty()) {
+                    apply(batch, docs);
+                    release(batch);
+                    writeMeter.mark(batch.size());
+                    applied.addAndGet(batch.size());
+                    synchronized (drained) {
+                        drained.notifyAll();
+                    }
+                    batch.clear();
+                    docs.clear();
+                }
+            }
+        } catch (final Throwable t) {
+            failure.compareAndSet(null, t);
+        }
+    }
+
+    private void apply(final List<Change> batch, final List<Document> docs) throws IOException {
+        if (append) {
+            for (final Change change : batch) {
+                if (!change.isDeleted()) {
+                    docs.add(change.getDocument());
+                }
+            }
+            writer.addDocuments(docs);
+            return;
+        }
+        for (final Change change : batch) {
+            final Term id = new Term("_id", change.getId());
+            if (change.isDeleted()) {
+                writer.deleteDocuments(id);
+            } else {
+                writer.updateDocument(id, change.getDocument());
+            }
+        }
+    }
+
+    private DocumentBuilder borrowDocumentBuilder() throws IOException, InterruptedException {
+        while (true) {
+            final DocumentBuilder result = documentBuilders.poll();
+            if (result != null) {
+                return result;
+            }
+            if (createdDocumentBuilders.incrementAndGet() <= maxDocumentBuilders) {
+                return new DocumentBuilder();
+            }
+            createdDocumentBuilders.decrementAndGet();
+            final DocumentBuilder released = documentBuilders.poll(OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            if (released != null) {
+                return released;
+            }
+            checkFailure();
+        }
+    }
+
+    private void release(final List<Change> batch) {
+        for (final Change change : batch) {
+            final DocumentBuilder builder = change.getBuilder();
+            if (builder != null) {
+                change.setBuilder(null);
+                change.setDocument(null);
+                documentBuilders.offer(builder);
+            }
+        }
+    }
+
+    private <T> void transfer(final BlockingQueue<T> queue, final T item) throws IOException {
+        try {
+            while (!queue.offer(item, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                checkFailure();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while indexing.", e);
+        }
+    }
+
+    private void await(final ExecutorService pool) throws IOException {
+        pool.shutdown();
+        try {
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (final InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while indexing.", e);
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        final Throwable t = failure.get();
+        if (t == null) {
+            return;
+        }
+        builders.shutdownNow();
+        writers.shutdownNow();
+        if (t instanceof IOException) {
+            throw (IOException) t;
+        }
+        throw new IOException("Indexing pipeline failed.", t);
+    }
+
+}
@@ -0,0 +1,277 @@
+package com.cloudant.fdblucene.couchdb;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An in-process HTTP stand-in for a CouchDB database, so the indexer can be
+ * exercised without a live server.
+ *
+ * It either serves a recorded _changes response, or a synthetic database of
+ * SyntheticDocs documents through the database info, _changes and _all_docs
+ * endpoints. Responses are gzip encoded for clients that accept it if gzip is
+ * on, and the bytes sent are counted.
+ *
+ */
+public final class LocalCouchServer implements AutoCloseable {
+
+    private final Path changes;
+    private final long seed;
+    // the synthetic database's _ids in _all_docs order, and their ordinals
+    private final String[] ids;
+    private final int[] ordinals;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private volatile boolean gzip;
+
+    /**
+     * Serve a recorded _changes response for every database.
+     */
+    public LocalCouchServer(final Path changes) throws IOException {
+        this(changes, 0, 0L);
+    }
+
+    /**
+     * Serve the first docs documents of SyntheticDocs with the given seed for
+     * every database, with update seqs 1 to docs in that order.
+     */
+    public LocalCouchServer(final int docs, final long seed) throws IOException {
+        this(null, docs, seed);
+    }
+
+    private LocalCouchServer(final Path changes, final int docs, final long seed) throws IOException {
+        this.changes = changes;
+        this.seed = seed;
+        this.ids = new String[docs];
+        this.ordinals = new int[docs];
+        final SyntheticDocs synthetic = new SyntheticDocs(seed);
+        final Integer[] order = new Integer[docs];
+        final String[] unsorted = new String[docs];
+        for (int i = 0; i < docs; i++) {
+            unsorted[i] = synthetic.get(i, -1).get("_id").getAsString();
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> unsorted[a].compareTo(unsorted[b]));
+        for (int i = 0; i < docs; i++) {
+            ids[i] = unsorted[order[i]];
+            ordinals[i] = order[i];
+        }
+
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * @return the URL of the database called name on this server.
+     */
+    public String databaseUrl(final String name) {
+        final InetSocketAddress address = server.getAddress();
+        return String.format("http://%s:%d/%s", address.getHostString(), address.getPort(), name);
+    }
+
+    public void setGzip(final boolean gzip) {
+        this.gzip = gzip;
+    }
+
+    /**
+     * @return the response body bytes sent so far, after any encoding.
+     */
+    public long bytesSent() {
+        return bytesSent.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        try {
+            final String path = exchange.getRequestURI().getPath();
+            final Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+            if (path.endsWith("/_changes")) {
+                if (changes != null) {
+                    try (final OutputStream out = respond(exchange)) {
+                        Files.copy(changes, out);
+                    }
+                } else {
+                    final String since = query.get("since");
+                    writeChanges(exchange, since == null ? 0 : Integer.parseInt(since));
+                }
+            } else if (changes == null && path.endsWith("/_all_docs")) {
+                writeAllDocs(exchange, key(query.get("startkey")), key(query.get("endkey")),
+                        !"false".equals(query.get("inclusive_end")));
+            } else if (changes == null && path.lastIndexOf('/') == 0 && path.length() > 1) {
+                final JsonObject info = new JsonObject();
+                info.addProperty("db_name", path.substring(1));
+                info.addProperty("doc_count", ids.length);
+                info.addProperty("update_seq", ids.length);
+                try (final Writer out = new OutputStreamWriter(respond(exchange), StandardCharsets.UTF_8)) {
+                    out.write(info.toString());
+                }
+            } else {
+                exchange.sendResponseHeaders(404, -1);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void writeChanges(final HttpExchange exchange, final int since) throws IOException {
+        final SyntheticDocs synthetic = new SyntheticDocs(seed);
+        final Gson gson = new Gson();
+        try (final JsonWriter writer = jsonWriter(exchange)) {
+            writer.beginObject();
+            writer.name("results");
+            writer.beginArray();
+            for (int ordinal = since; ordinal < ids.length; ordinal++) {
+                final JsonObject doc = synthetic.get(ordinal, -1);
+                writer.beginObject();
+                writer.name("seq").value(ordinal + 1);
+                writer.name("id").value(doc.get("_id").getAsString());
+                writer.name("changes").beginArray().beginObject();
+                writer.name("rev").value(doc.get("_rev").getAsString());
+                writer.endObject().endArray();
+                writer.name("doc");
+                gson.toJson(doc, writer);
+                writer.endObject();
+            }
+            writer.endArray();
+            writer.name("last_seq").value(ids.length);
+            writer.name("pending").value(0);
+            writer.endObject();
+        }
+    }
+
+    private void writeAllDocs(final HttpExchange exchange, final String startKey, final String endKey,
+            final boolean inclusiveEnd) throws IOException {
+        final int from = startKey == null ? 0 : firstAtLeast(startKey, false);
+        final int to = endKey == null ? ids.length : firstAtLeast(endKey, inclusiveEnd);
+        final SyntheticDocs synthetic = new SyntheticDocs(seed);
+        final Gson gson = new Gson();
+        try (final JsonWriter writer = jsonWriter(exchange)) {
+            writer.beginObject();
+            writer.name("total_rows").value(ids.length);
+            writer.name("offset").value(from);
+            writer.name("rows");
+            writer.beginArray();
+            for (int i = from; i < to; i++) {
+                final JsonObject doc = synthetic.get(ordinals[i], -1);
+                writer.beginObject();
+                writer.name("id").value(ids[i]);
+                writer.name("key").value(ids[i]);
+                writer.name("value").beginObject();
+                writer.name("rev").value(doc.get("_rev").getAsString());
+                writer.endObject();
+                writer.name("doc");
+                gson.toJson(doc, writer);
+                writer.endObject();
+            }
+            writer.endArray();
+            writer.endObject();
+        }
+    }
+
+    /**
+     * @return the position of the first _id at least key, or above it if
+     *         above is true.
+     */
+    private int firstAtLeast(final String key, final boolean above) {
+        int low = 0;
+        int high = ids.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            final int cmp = ids[mid].compareTo(key);
+            if (cmp < 0 || (above && cmp == 0)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private JsonWriter jsonWriter(final HttpExchange exchange) throws IOException {
+        return new JsonWriter(new OutputStreamWriter(respond(exchange), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Send the headers of a 200 JSON response.
+     *
+     * @return the stream to write the body to, which the caller closes.
+     */
+    private OutputStream respond(final HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        final List<String> accepted = exchange.getRequestHeaders().get("Accept-Encoding");
+        final boolean encode = gzip && accepted != null && accepted.toString().contains("gzip");
+        if (encode) {
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.sendResponseHeaders(200, 0);
+        final OutputStream counted = new FilterOutputStream(exchange.getResponseBody()) {
+            @Override
+            public void write(final int b) throws IOException {
+                out.write(b);
+                bytesSent.incrementAndGet();
+            }
+
+            @Override
+            public void write(final byte[] b, final int off, final int len) throws IOException {
+                out.write(b, off, len);
+                bytesSent.addAndGet(len);
+            }
+        };
+        return encode ? new GZIPOutputStream(counted, 8192) : counted;
+    }
+
+    private static Map<String, String> query(final String rawQuery) throws IOException {
+        final Map<String, String> result = new HashMap<>();
+        if (rawQuery == null) {
+            return result;
+        }
+        for (final String pair : rawQuery.split("&")) {
+            final int eq = pair.indexOf('=');
+            if (eq > 0) {
+                result.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"),
+                        URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the string a JSON encoded startkey or endkey holds.
+     */
+    private static String key(final String json) {
+        return json == null ? null : new JsonParser().parse(json).getAsString();
+    }
+
+}
@@ -0,0 +1,45 @@
+package com.cloudant.fdblucene.couchdb;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Count the documents passing through one stage of the indexing pipeline.
+ *
+ */
+public final class StageMeter {
+
+    private final String name;
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong firstNanos = new AtomicLong();
+    private volatile long lastNanos;
+
+    public StageMeter(final String name) {
+        this.name = name;
+    }
+
+    public void mark(final long docs) {
+        final long now = System.nanoTime();
+        firstNanos.compareAndSet(0L, now);
+        count.addAndGet(docs);
+        lastNanos = now;
+    }
+
+    public long count() {
+        return count.get();
+    }
+
+    public double docsPerSecond() {
+        final long elapsed = lastNanos - firstNanos.get();
+        if (elapsed <= 0) {
+            return 0.0;
+        }
+        return count.get() / (elapsed / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d docs, %.1f docs/sec", name, count(), docsPerSecond());
+    }
+
+}
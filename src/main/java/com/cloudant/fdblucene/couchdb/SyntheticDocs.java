@@ -0,0 +1,152 @@
+package com.cloudant.fdblucene.couchdb;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Generate a deterministic stream of CouchDB-shaped JSON documents.
+ *
+ */
+public final class SyntheticDocs {
+
+    private static final String[] TYPES = { "person", "order", "product", "event" };
+    private static final int VOCABULARY_SIZE = 1000;
+
+    private final long seed;
+    private final Random random;
+    private final String[] vocabulary;
+
+    public SyntheticDocs(final long seed) {
+        this.seed = seed;
+        this.random = new Random(seed);
+        this.vocabulary = vocabulary(new Random(seed ^ 0x5DEECE66DL));
+    }
+
+    public JsonObject next() {
+        return next(10 + random.nextInt(40));
+    }
+
+    /**
+     * The document at position ordinal of this seed's sequence, independent
+     * of any documents generated before it. This is not the same sequence
+     * next() produces.
+     *
+     * @param descriptionWords the length of the description, or -1 for the
+     *                         usual 10 to 49 words.
+     */
+    public JsonObject get(final long ordinal, final int descriptionWords) {
+        random.setSeed(mix(seed + ordinal * 0x9E3779B97F4A7C15L));
+        return descriptionWords < 0 ? next() : next(descriptionWords);
+    }
+
+    private JsonObject next(final int descriptionWords) {
+        final JsonObject result = new JsonObject();
+        result.addProperty("_id", hex(32));
+        result.addProperty("_rev", "1-" + hex(32));
+        result.addProperty("type", TYPES[random.nextInt(TYPES.length)]);
+        result.addProperty("name", words(2));
+        result.addProperty("age", random.nextInt(100));
+        result.addProperty("score", random.nextDouble() * 1000);
+        result.addProperty("active", random.nextBoolean());
+
+        final JsonObject geo = new JsonObject();
+        geo.addProperty("lat", random.nextDouble() * 180 - 90);
+        geo.addProperty("lon", random.nextDouble() * 360 - 180);
+        final JsonObject address = new JsonObject();
+        address.addProperty("street", words(3));
+        address.addProperty("city", words(1));
+        address.add("geo", geo);
+        result.add("address", address);
+
+        final JsonArray tags = new JsonArray();
+        final int tagCount = random.nextInt(5);
+        for (int i = 0; i < tagCount; i++) {
+            tags.add(words(1));
+        }
+        result.add("tags", tags);
+        result.addProperty("description", words(descriptionWords));
+        return result;
+    }
+
+    /**
+     * Write a _changes?include_docs=true response holding count documents.
+     */
+    public static void writeChanges(final Path path, final int count, final long seed) throws IOException {
+        final SyntheticDocs docs = new SyntheticDocs(seed);
+        final Gson gson = new Gson();
+        try (final Writer out = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+                final JsonWriter writer = new JsonWriter(out)) {
+            writer.beginObject();
+            writer.name("results");
+            writer.beginArray();
+            for (int seq = 1; seq <= count; seq++) {
+                final JsonObject doc = docs.next();
+                writer.beginObject();
+                writer.name("seq").value(seq);
+                writer.name("id").value(doc.get("_id").getAsString());
+                writer.name("changes").beginArray().beginObject();
+                writer.name("rev").value(doc.get("_rev").getAsString());
+                writer.endObject().endArray();
+                writer.name("doc");
+                gson.toJson(doc, writer);
+                writer.endObject();
+            }
+            writer.endArray();
+            writer.name("last_seq").value(count);
+            writer.name("pending").value(0);
+            writer.endObject();
+        }
+    }
+
+    private String words(final int count) {
+        final StringBuilder result = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                result.append(' ');
+            }
+            // skew towards the front of the vocabulary, like natural text
+            result.append(vocabulary[random.nextInt(random.nextInt(VOCABULARY_SIZE) + 1)]);
+        }
+        return result.toString();
+    }
+
+    private String hex(final int length) {
+        final char[] result = new char[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = Character.forDigit(random.nextInt(16), 16);
+        }
+        return new String(result);
+    }
+
+    /**
+     * The SplitMix64 finalizer, so that neighbouring ordinals get unrelated
+     * seeds.
+     */
+    public static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static String[] vocabulary(final Random random) {
+        final String[] result = new String[VOCABULARY_SIZE];
+        for (int i = 0; i < result.length; i++) {
+            final char[] word = new char[3 + random.nextInt(7)];
+            for (int j = 0; j < word.length; j++) {
+                word[j] = (char) ('a' + random.nextInt(26));
+            }
+            result[i] = new String(word);
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.cloudant.fdblucene.store;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed size blocks of file contents, keyed by file name and block number.
+ *
+ * Reads copy out of the cache and writes copy in, so implementations are free
+ * to reuse their storage once a block is evicted.
+ *
+ */
+public abstract class BlockCache {
+
+    protected final AtomicLong hits = new AtomicLong();
+    protected final AtomicLong misses = new AtomicLong();
+    protected final AtomicLong evictions = new AtomicLong();
+
+    private final int blockSize;
+
+    protected BlockCache(final int blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("blockSize must be positive.");
+        }
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Create a cache by name: none, heap or offheap.
+     */
+    public static BlockCache create(final String type, final long maxBytes, final int blockSize) {
+        switch (type.toLowerCase(Locale.ROOT)) {
+        case "none":
+            return new NoBlockCache(blockSize);
+        case "heap":
+            return new HeapBlockCache(maxBytes, blockSize);
+        case "offheap":
+            return new DirectBlockCache(maxBytes, blockSize);
+        default:
+            throw new IllegalArgumentException("Unknown cache type " + type);
+        }
+    }
+
+    public final int blockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Copy length bytes starting at blockOffset within a cached block into
+     * dest.
+     *
+     * @return false, and copy nothing, if the block is not cached.
+     */
+    public abstract boolean read(String file, long block, int blockOffset, byte[] dest, int offset, int length);
+
+    /**
+     * Cache the first length bytes of data as the contents of block.
+     */
+    public abstract void put(String file, long block, byte[] data, int length);
+
+    /**
+     * Drop every block of file.
+     */
+    public abstract void invalidate(String file);
+
+    /**
+     * Drop every block.
+     */
+    public abstract void clear();
+
+    /**
+     * @return the bytes of file data currently cached.
+     */
+    public abstract long bytesCached();
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public long evictions() {
+        return evictions.get();
+    }
+
+    public double hitRatio() {
+        final long total = hits.get() + misses.get();
+        return total == 0 ? 0.0 : hits.get() / (double) total;
+    }
+
+    public void resetCounters() {
+        hits.set(0);
+        misses.set(0);
+        evictions.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d hits, %d misses (%.1f%% hit), %d evictions, %d bytes cached",
+                getClass().getSimpleName(), hits(), misses(), hitRatio() * 100, evictions(), bytesCached());
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.cloudant.fdblucene.store;
+
+import java.io.IOException;
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FilterDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+
+/**
+ * Serve reads from a BlockCache, going to the wrapped directory only on a
+ * miss. Index files are written once, so blocks only need dropping when a
+ * file is deleted or renamed.
+ *
+ * With a NoBlockCache, inputs are the wrapped directory's own, so reads reach
+ * it exactly as they would without the wrapper.
+ *
+ */
+public final class CachingDirectory extends FilterDirectory {
+
+    private final BlockCache cache;
+
+    public CachingDirectory(final Directory in, final BlockCache cache) {
+        super(in);
+        this.cache = cache;
+    }
+
+    public BlockCache getCache() {
+        return cache;
+    }
+
+    @Override
+    public IndexInput openInput(final String name, final IOContext context) throws IOException {
+        final IndexInput input = in.openInput(name, context);
+        if (cache instanceof NoBlockCache) {
+            return input;
+        }
+        return new CachingIndexInput("CachingIndexInput(" + input + ")", name, input, 0, input.length(), cache);
+    }
+
+    @Override
+    public void deleteFile(final String name) throws IOException {
+        cache.invalidate(name);
+        in.deleteFile(name);
+    }
+
+    @Override
+    public void rename(final String source, final String dest) throws IOException {
+        cache.invalidate(source);
+        cache.invalidate(dest);
+        in.rename(source, dest);
+    }
+
+    @Override
+    public String toString() {
+        return "CachingDirectory(" + in + ", " + cache + ")";
+    }
+
+}
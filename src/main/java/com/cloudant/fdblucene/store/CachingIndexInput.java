@@ -0,0 +1,101 @@
+package com.cloudant.fdblucene.store;
+
+import java.io.IOException;
+
+import org.apache.lucene.store.BufferedIndexInput;
+import org.apache.lucene.store.IndexInput;
+
+/**
+ * Reads whole blocks of the underlying file through a BlockCache. Slices
+ * share the file's blocks rather than caching their own.
+ *
+ */
+final class CachingIndexInput extends BufferedIndexInput {
+
+    private final String file;
+    private final BlockCache cache;
+    private final long offset;
+    private final long length;
+    private IndexInput in;
+    private byte[] block;
+    private boolean isClone;
+
+    CachingIndexInput(final String resourceDescription, final String file, final IndexInput in,
+            final long offset, final long length, final BlockCache cache) {
+        super(resourceDescription, cache.blockSize());
+        this.file = file;
+        this.in = in;
+        this.offset = offset;
+        this.length = length;
+        this.cache = cache;
+    }
+
+    @Override
+    protected void readInternal(final byte[] b, int off, int len) throws IOException {
+        final int blockSize = cache.blockSize();
+        long position = offset + getFilePointer();
+        if (position + len > offset + length) {
+            throw new IOException("read past EOF: " + this);
+        }
+        while (len > 0) {
+            final long blockNumber = position / blockSize;
+            final int blockOffset = (int) (position % blockSize);
+            final int chunk = Math.min(len, blockSize - blockOffset);
+            if (!cache.read(file, blockNumber, blockOffset, b, off, chunk)) {
+                final long blockStart = blockNumber * blockSize;
+                final int blockLength = (int) Math.min(blockSize, in.length() - blockStart);
+                if (block == null) {
+                    block = new byte[blockSize];
+                }
+                in.seek(blockStart);
+                in.readBytes(block, 0, blockLength);
+                cache.put(file, blockNumber, block, blockLength);
+                System.arraycopy(block, blockOffset, b, off, chunk);
+            }
+            position += chunk;
+            off += chunk;
+            len -= chunk;
+        }
+    }
+
+    @Override
+    protected void seekInternal(final long pos) throws IOException {
+        if (pos > length) {
+            throw new IOException("seek past EOF: " + this);
+        }
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public IndexInput slice(final String sliceDescription, final long sliceOffset, final long sliceLength)
+            throws IOException {
+        if (sliceOffset < 0 || sliceLength < 0 || sliceOffset + sliceLength > length) {
+            throw new IllegalArgumentException("slice() " + sliceDescription + " out of bounds: " + this);
+        }
+        final CachingIndexInput result = new CachingIndexInput(getFullSliceDescription(sliceDescription), file,
+                in.clone(), offset + sliceOffset, sliceLength, cache);
+        result.isClone = true;
+        return result;
+    }
+
+    @Override
+    public CachingIndexInput clone() {
+        final CachingIndexInput result = (CachingIndexInput) super.clone();
+        result.in = in.clone();
+        result.block = null;
+        result.isClone = true;
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!isClone) {
+            in.close();
+        }
+    }
+
+}
@@ -0,0 +1,72 @@
+package com.cloudant.fdblucene.store;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Blocks held in direct ByteBuffers outside the Java heap, so a large cache
+ * adds nothing to GC work. The whole budget is allocated up front and carved
+ * into block sized slots that are reused on eviction.
+ *
+ */
+public final class DirectBlockCache extends LruBlockCache<DirectBlockCache.Slot> {
+
+    static final class Slot {
+        private final ByteBuffer buffer;
+        private final int start;
+        private int length;
+
+        private Slot(final ByteBuffer buffer, final int start) {
+            this.buffer = buffer;
+            this.start = start;
+        }
+    }
+
+    private final ArrayDeque<Slot> free = new ArrayDeque<>();
+
+    public DirectBlockCache(final long maxBytes, final int blockSize) {
+        super(maxBytes, blockSize);
+        final int slotsPerBuffer = Integer.MAX_VALUE / blockSize;
+        long slots = maxBytes / blockSize;
+        while (slots > 0) {
+            final int count = (int) Math.min(slots, slotsPerBuffer);
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(count * blockSize);
+            for (int i = 0; i < count; i++) {
+                free.add(new Slot(buffer, i * blockSize));
+            }
+            slots -= count;
+        }
+    }
+
+    @Override
+    protected Slot store(final byte[] data, final int length, final Slot recycled) {
+        final Slot slot = recycled != null ? recycled : free.remove();
+        slot.buffer.position(slot.start);
+        slot.buffer.put(data, 0, length);
+        slot.length = length;
+        return slot;
+    }
+
+    @Override
+    protected void copy(final Slot value, final int blockOffset, final byte[] dest, final int offset,
+            final int length) {
+        value.buffer.position(value.start + blockOffset);
+        value.buffer.get(dest, offset, length);
+    }
+
+    @Override
+    protected int length(final Slot value) {
+        return value.length;
+    }
+
+    @Override
+    protected int footprint(final Slot value) {
+        return blockSize();
+    }
+
+    @Override
+    protected void release(final Slot value) {
+        free.add(value);
+    }
+
+}
@@ -0,0 +1,36 @@
+package com.cloudant.fdblucene.store;
+
+/**
+ * Blocks held in byte arrays on the Java heap.
+ *
+ */
+public final class HeapBlockCache extends LruBlockCache<byte[]> {
+
+    public HeapBlockCache(final long maxBytes, final int blockSize) {
+        super(maxBytes, blockSize);
+    }
+
+    @Override
+    protected byte[] store(final byte[] data, final int length, final byte[] recycled) {
+        final byte[] result = recycled != null && recycled.length == length ? recycled : new byte[length];
+        System.arraycopy(data, 0, result, 0, length);
+        return result;
+    }
+
+    @Override
+    protected void copy(final byte[] value, final int blockOffset, final byte[] dest, final int offset,
+            final int length) {
+        System.arraycopy(value, blockOffset, dest, offset, length);
+    }
+
+    @Override
+    protected int length(final byte[] value) {
+        return value.length;
+    }
+
+    @Override
+    protected int footprint(final byte[] value) {
+        return value.length;
+    }
+
+}
@@ -0,0 +1,143 @@
+package com.cloudant.fdblucene.store;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.apache.lucene.store.Directory;
+
+/**
+ * Process wide counts of what MeteringDirectory instances were asked to do.
+ *
+ * Metering is off unless the meter system property is true or enable() has
+ * been called, in which case wrap() puts a MeteringDirectory around the
+ * directory it is given. Counts are of Lucene's calls on the directory, not
+ * of the requests the wrapped directory makes to its storage.
+ *
+ */
+public final class IOMetrics {
+
+    public enum Counter {
+        BYTES_READ("B"),
+        READ_CALLS("calls"),
+        SEEKS("calls"),
+        CLONES("calls"),
+        SLICES("calls"),
+        OPENS("files"),
+        BYTES_WRITTEN("B"),
+        /** The part of BYTES_WRITTEN that went to files created by merges. */
+        MERGE_BYTES_WRITTEN("B"),
+        WRITE_CALLS("calls"),
+        CREATES("files"),
+        SYNCS("calls"),
+        DELETES("files");
+
+        private final String unit;
+
+        Counter(final String unit) {
+            this.unit = unit;
+        }
+
+        public String unit() {
+            return unit;
+        }
+    }
+
+    public enum Latency {
+        /** readBytes calls, single byte and primitive reads are not timed. */
+        READ,
+        /** writeBytes calls. */
+        WRITE,
+        /** openInput. */
+        OPEN,
+        /** sync. */
+        SYNC
+    }
+
+    public static final class Snapshot {
+        private final Map<Counter, Long> counts;
+        private final Map<Latency, Histogram> latencies;
+
+        private Snapshot(final Map<Counter, Long> counts, final Map<Latency, Histogram> latencies) {
+            this.counts = counts;
+            this.latencies = latencies;
+        }
+
+        public long count(final Counter counter) {
+            return counts.get(counter);
+        }
+
+        /**
+         * @return latencies in nanoseconds.
+         */
+        public Histogram latency(final Latency latency) {
+            return latencies.get(latency);
+        }
+    }
+
+    private static final LongAdder[] COUNTERS = new LongAdder[Counter.values().length];
+    private static final Recorder[] LATENCIES = new Recorder[Latency.values().length];
+    private static volatile boolean enabled = Boolean.getBoolean("meter");
+
+    static {
+        for (int i = 0; i < COUNTERS.length; i++) {
+            COUNTERS[i] = new LongAdder();
+        }
+        for (int i = 0; i < LATENCIES.length; i++) {
+            LATENCIES[i] = new Recorder(3);
+        }
+    }
+
+    private IOMetrics() {
+    }
+
+    public static void enable() {
+        enabled = true;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return dir wrapped in a MeteringDirectory if metering is enabled,
+     *         otherwise dir itself.
+     */
+    public static Directory wrap(final Directory dir) {
+        return enabled ? new MeteringDirectory(dir) : dir;
+    }
+
+    /**
+     * Counts and latencies since the last snapshot or reset.
+     */
+    public static Snapshot snapshot() {
+        final Map<Counter, Long> counts = new EnumMap<>(Counter.class);
+        for (final Counter counter : Counter.values()) {
+            counts.put(counter, COUNTERS[counter.ordinal()].sumThenReset());
+        }
+        final Map<Latency, Histogram> latencies = new EnumMap<>(Latency.class);
+        for (final Latency latency : Latency.values()) {
+            latencies.put(latency, LATENCIES[latency.ordinal()].getIntervalHistogram());
+        }
+        return new Snapshot(counts, latencies);
+    }
+
+    public static void reset() {
+        snapshot();
+    }
+
+    static void add(final Counter counter, final long value) {
+        COUNTERS[counter.ordinal()].add(value);
+    }
+
+    static void increment(final Counter counter) {
+        COUNTERS[counter.ordinal()].increment();
+    }
+
+    static void record(final Latency latency, final long startNanos) {
+        LATENCIES[latency.ordinal()].recordValue(System.nanoTime() - startNanos);
+    }
+
+}
@@ -0,0 +1,231 @@
+package com.cloudant.fdblucene.store;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.index.CorruptIndexException;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.NIOFSDirectory;
+
+import com.apple.foundationdb.Database;
+import com.apple.foundationdb.FDB;
+import com.cloudant.fdblucene.FDBDirectory;
+
+/**
+ * Copy the latest commit of an index from one directory to another, file by
+ * file and several files at a time.
+ *
+ * The segments file goes last, so the target holds no commit until every
+ * file it names is in place. Every copy is checked against the checksum in
+ * the footer of the source file. A migration that was interrupted can be run
+ * again: files already in the target with the source's length and checksum
+ * are kept, anything else of the commit's is copied again.
+ *
+ */
+public final class IndexMigrator {
+
+    public static final class Result {
+        public final int filesCopied;
+        public final int filesSkipped;
+        public final long bytesCopied;
+        public final long bytesSkipped;
+        public final long nanos;
+
+        private Result(final int filesCopied, final int filesSkipped, final long bytesCopied,
+                final long bytesSkipped, final long nanos) {
+            this.filesCopied = filesCopied;
+            this.filesSkipped = filesSkipped;
+            this.bytesCopied = bytesCopied;
+            this.bytesSkipped = bytesSkipped;
+            this.nanos = nanos;
+        }
+
+        /**
+         * @return the rate at which bytes were copied.
+         */
+        public double mbPerSec() {
+            return bytesCopied / 1048576.0 / (nanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("copied %d files, %.1f MB in %.1f s (%.1f MB/sec), kept %d files, %.1f MB",
+                    filesCopied, bytesCopied / 1048576.0, nanos / 1e9, mbPerSec(), filesSkipped,
+                    bytesSkipped / 1048576.0);
+        }
+    }
+
+    private final int threads;
+    private final boolean verify;
+
+    /**
+     * @param verify read back each copied or kept file in full and check it
+     *               against its footer; otherwise only the footers are
+     *               compared.
+     */
+    public IndexMigrator(final int threads, final boolean verify) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1.");
+        }
+        this.threads = threads;
+        this.verify = verify;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.out.println("IndexMigrator: sourcepath indexpath");
+            return;
+        }
+        final int threads = Integer.getInteger("threads", Runtime.getRuntime().availableProcessors());
+        final int pageSize = Integer.getInteger("pageSize", 10000);
+        final int pagesPerTxn = Integer.getInteger("pagesPerTxn", 10);
+        final boolean verify = Boolean.parseBoolean(System.getProperty("verify", "true"));
+
+        final FileSystem fileSystem = FileSystems.getDefault();
+        FDB.selectAPIVersion(600);
+        final Database db = FDB.instance().open();
+        try (final Directory source = new NIOFSDirectory(fileSystem.getPath(args[0]));
+                final Directory target = FDBDirectory.open(db, fileSystem.getPath(args[1]), pageSize,
+                        pageSize * pagesPerTxn)) {
+            System.out.println(new IndexMigrator(threads, verify).migrate(source, target));
+        } finally {
+            db.close();
+        }
+    }
+
+    public Result migrate(final Directory source, final Directory target) throws IOException {
+        final long start = System.nanoTime();
+        final SegmentInfos infos = SegmentInfos.readLatestCommit(source);
+        final String segmentsFile = infos.getSegmentsFileName();
+        final Collection<String> files = infos.files(true);
+
+        final Set<String> existing = new HashSet<>();
+        for (final String name : target.listAll()) {
+            if (!files.contains(name)) {
+                throw new IOException("Target " + target + " holds " + name + ", not part of " + segmentsFile);
+            }
+            existing.add(name);
+        }
+
+        // largest first, so the last file to start is a small one
+        final List<String> dataFiles = new ArrayList<>(files);
+        dataFiles.remove(segmentsFile);
+        final Map<String, Long> lengths = new HashMap<>();
+        for (final String name : dataFiles) {
+            lengths.put(name, source.fileLength(name));
+        }
+        dataFiles.sort((a, b) -> Long.compare(lengths.get(b), lengths.get(a)));
+
+        final AtomicLong filesCopied = new AtomicLong();
+        final AtomicLong bytesCopied = new AtomicLong();
+        final AtomicLong bytesSkipped = new AtomicLong();
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<Void>> futures = new ArrayList<>();
+            for (final String name : dataFiles) {
+                futures.add(executor.submit(() -> {
+                    transfer(source, target, name, existing.contains(name), filesCopied, bytesCopied,
+                            bytesSkipped);
+                    return null;
+                }));
+            }
+            for (final Future<Void> future : futures) {
+                await(future);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        target.sync(dataFiles);
+        transfer(source, target, segmentsFile, existing.contains(segmentsFile), filesCopied, bytesCopied,
+                bytesSkipped);
+        target.sync(Collections.singleton(segmentsFile));
+        target.syncMetaData();
+
+        final int copied = (int) filesCopied.get();
+        return new Result(copied, files.size() - copied, bytesCopied.get(), bytesSkipped.get(),
+                System.nanoTime() - start);
+    }
+
+    private void transfer(final Directory source, final Directory target, final String name, final boolean exists,
+            final AtomicLong filesCopied, final AtomicLong bytesCopied, final AtomicLong bytesSkipped)
+            throws IOException {
+        final long length = source.fileLength(name);
+        final long checksum;
+        try (final IndexInput input = source.openInput(name, IOContext.READONCE)) {
+            checksum = CodecUtil.retrieveChecksum(input);
+        }
+        if (exists) {
+            if (matches(target, name, length, checksum)) {
+                bytesSkipped.addAndGet(length);
+                return;
+            }
+            target.deleteFile(name);
+        }
+        target.copyFrom(source, name, name, IOContext.DEFAULT);
+        if (!matches(target, name, length, checksum)) {
+            throw new CorruptIndexException("Copy does not match the source checksum " + checksum, name);
+        }
+        filesCopied.incrementAndGet();
+        bytesCopied.addAndGet(length);
+    }
+
+    /**
+     * @return true if name in dir has the given length and footer checksum,
+     *         and when verifying, content that agrees with it.
+     */
+    private boolean matches(final Directory dir, final String name, final long length, final long checksum)
+            throws IOException {
+        if (dir.fileLength(name) != length) {
+            return false;
+        }
+        try (final IndexInput input = dir.openInput(name, IOContext.READONCE)) {
+            if (CodecUtil.retrieveChecksum(input) != checksum) {
+                return false;
+            }
+            if (verify) {
+                try {
+                    CodecUtil.checksumEntireFile(input);
+                } catch (final CorruptIndexException e) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (final CorruptIndexException e) {
+            // a truncated or unfinished copy has no valid footer
+            return false;
+        }
+    }
+
+    private static void await(final Future<Void> future) throws IOException {
+        try {
+            future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+}
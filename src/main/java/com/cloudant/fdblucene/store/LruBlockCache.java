@@ -0,0 +1,135 @@
+package com.cloudant.fdblucene.store;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used eviction over a byte budget. Subclasses decide where
+ * block contents live.
+ *
+ */
+abstract class LruBlockCache<V> extends BlockCache {
+
+    private static final class Key {
+        private final String file;
+        private final long block;
+
+        private Key(final String file, final long block) {
+            this.file = file;
+            this.block = block;
+        }
+
+        @Override
+        public int hashCode() {
+            return file.hashCode() * 31 + Long.hashCode(block);
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return block == other.block && file.equals(other.file);
+        }
+    }
+
+    private final long maxBytes;
+    private final LinkedHashMap<Key, V> blocks = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytesCached;
+
+    protected LruBlockCache(final long maxBytes, final int blockSize) {
+        super(blockSize);
+        if (maxBytes < blockSize) {
+            throw new IllegalArgumentException("maxBytes must hold at least one block.");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Store length bytes of data, reusing the storage of an evicted block if
+     * recycled is not null.
+     */
+    protected abstract V store(byte[] data, int length, V recycled);
+
+    protected abstract void copy(V value, int blockOffset, byte[] dest, int offset, int length);
+
+    protected abstract int length(V value);
+
+    /**
+     * Storage charged against the budget for a block, at least its length.
+     */
+    protected abstract int footprint(V value);
+
+    @Override
+    public synchronized boolean read(final String file, final long block, final int blockOffset,
+            final byte[] dest, final int offset, final int length) {
+        final V value = blocks.get(new Key(file, block));
+        if (value == null || blockOffset + length > length(value)) {
+            misses.incrementAndGet();
+            return false;
+        }
+        copy(value, blockOffset, dest, offset, length);
+        hits.incrementAndGet();
+        return true;
+    }
+
+    @Override
+    public synchronized void put(final String file, final long block, final byte[] data, final int length) {
+        final Key key = new Key(file, block);
+        V recycled = blocks.remove(key);
+        if (recycled != null) {
+            bytesCached -= footprint(recycled);
+        }
+        final Iterator<V> eldest = blocks.values().iterator();
+        while (bytesCached + blockSize() > maxBytes && eldest.hasNext()) {
+            final V evicted = eldest.next();
+            eldest.remove();
+            bytesCached -= footprint(evicted);
+            evictions.incrementAndGet();
+            if (recycled == null) {
+                recycled = evicted;
+            } else {
+                release(evicted);
+            }
+        }
+        final V value = store(data, length, recycled);
+        blocks.put(key, value);
+        bytesCached += footprint(value);
+    }
+
+    @Override
+    public synchronized void invalidate(final String file) {
+        final Iterator<Map.Entry<Key, V>> it = blocks.entrySet().iterator();
+        while (it.hasNext()) {
+            final Map.Entry<Key, V> entry = it.next();
+            if (entry.getKey().file.equals(file)) {
+                bytesCached -= footprint(entry.getValue());
+                release(entry.getValue());
+                it.remove();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        for (final V value : blocks.values()) {
+            release(value);
+        }
+        blocks.clear();
+        bytesCached = 0;
+    }
+
+    @Override
+    public synchronized long bytesCached() {
+        return bytesCached;
+    }
+
+    /**
+     * Called when a block's storage is no longer referenced by the cache.
+     */
+    protected void release(final V value) {
+    }
+
+}
@@ -0,0 +1,72 @@
+package com.cloudant.fdblucene.store;
+
+import java.io.IOException;
+import java.util.Collection;
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FilterDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+
+import com.cloudant.fdblucene.store.IOMetrics.Counter;
+import com.cloudant.fdblucene.store.IOMetrics.Latency;
+
+/**
+ * Counts file operations and the reads and writes of every input and output
+ * it opens into IOMetrics.
+ *
+ */
+public final class MeteringDirectory extends FilterDirectory {
+
+    public MeteringDirectory(final Directory in) {
+        super(in);
+    }
+
+    @Override
+    public IndexInput openInput(final String name, final IOContext context) throws IOException {
+        final long start = System.nanoTime();
+        final IndexInput input = in.openInput(name, context);
+        IOMetrics.record(Latency.OPEN, start);
+        IOMetrics.increment(Counter.OPENS);
+        return new MeteringIndexInput("MeteringIndexInput(" + input + ")", input);
+    }
+
+    @Override
+    public IndexOutput createOutput(final String name, final IOContext context) throws IOException {
+        IOMetrics.increment(Counter.CREATES);
+        return new MeteringIndexOutput(in.createOutput(name, context),
+                context.context == IOContext.Context.MERGE);
+    }
+
+    @Override
+    public IndexOutput createTempOutput(final String prefix, final String suffix, final IOContext context)
+            throws IOException {
+        IOMetrics.increment(Counter.CREATES);
+        return new MeteringIndexOutput(in.createTempOutput(prefix, suffix, context),
+                context.context == IOContext.Context.MERGE);
+    }
+
+    @Override
+    public void sync(final Collection<String> names) throws IOException {
+        final long start = System.nanoTime();
+        in.sync(names);
+        IOMetrics.record(Latency.SYNC, start);
+        IOMetrics.increment(Counter.SYNCS);
+    }
+
+    @Override
+    public void syncMetaData() throws IOException {
+        final long start = System.nanoTime();
+        in.syncMetaData();
+        IOMetrics.record(Latency.SYNC, start);
+        IOMetrics.increment(Counter.SYNCS);
+    }
+
+    @Override
+    public void deleteFile(final String name) throws IOException {
+        in.deleteFile(name);
+        IOMetrics.increment(Counter.DELETES);
+    }
+
+}
@@ -0,0 +1,165 @@
+package com.cloudant.fdblucene.store;
+
+import java.io.IOException;
+
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.RandomAccessInput;
+
+import com.cloudant.fdblucene.store.IOMetrics.Counter;
+import com.cloudant.fdblucene.store.IOMetrics.Latency;
+
+/**
+ * Counts reads, seeks, clones and slices of the wrapped input. Primitive
+ * reads are delegated whole and count as one call, as the wrapped input
+ * would otherwise see them as a run of single byte reads.
+ *
+ */
+final class MeteringIndexInput extends IndexInput {
+
+    private final IndexInput in;
+
+    MeteringIndexInput(final String resourceDescription, final IndexInput in) {
+        super(resourceDescription);
+        this.in = in;
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+        final byte result = in.readByte();
+        IOMetrics.increment(Counter.READ_CALLS);
+        IOMetrics.increment(Counter.BYTES_READ);
+        return result;
+    }
+
+    @Override
+    public void readBytes(final byte[] b, final int offset, final int len) throws IOException {
+        final long start = System.nanoTime();
+        in.readBytes(b, offset, len);
+        IOMetrics.record(Latency.READ, start);
+        IOMetrics.increment(Counter.READ_CALLS);
+        IOMetrics.add(Counter.BYTES_READ, len);
+    }
+
+    @Override
+    public short readShort() throws IOException {
+        final short result = in.readShort();
+        IOMetrics.increment(Counter.READ_CALLS);
+        IOMetrics.add(Counter.BYTES_READ, Short.BYTES);
+        return result;
+    }
+
+    @Override
+    public int readInt() throws IOException {
+        final int result = in.readInt();
+        IOMetrics.increment(Counter.READ_CALLS);
+        IOMetrics.add(Counter.BYTES_READ, Integer.BYTES);
+        return result;
+    }
+
+    @Override
+    public long readLong() throws IOException {
+        final long result = in.readLong();
+        IOMetrics.increment(Counter.READ_CALLS);
+        IOMetrics.add(Counter.BYTES_READ, Long.BYTES);
+        return result;
+    }
+
+    @Override
+    public int readVInt() throws IOException {
+        final long start = in.getFilePointer();
+        final int result = in.readVInt();
+        IOMetrics.increment(Counter.READ_CALLS);
+        IOMetrics.add(Counter.BYTES_READ, in.getFilePointer() - start);
+        return result;
+    }
+
+    @Override
+    public long readVLong() throws IOException {
+        final long start = in.getFilePointer();
+        final long result = in.readVLong();
+        IOMetrics.increment(Counter.READ_CALLS);
+        IOMetrics.add(Counter.BYTES_READ, in.getFilePointer() - start);
+        return result;
+    }
+
+    @Override
+    public void skipBytes(final long numBytes) throws IOException {
+        in.skipBytes(numBytes);
+        IOMetrics.increment(Counter.SEEKS);
+    }
+
+    @Override
+    public void seek(final long pos) throws IOException {
+        in.seek(pos);
+        IOMetrics.increment(Counter.SEEKS);
+    }
+
+    @Override
+    public long getFilePointer() {
+        return in.getFilePointer();
+    }
+
+    @Override
+    public long length() {
+        return in.length();
+    }
+
+    @Override
+    public MeteringIndexInput clone() {
+        IOMetrics.increment(Counter.CLONES);
+        return new MeteringIndexInput(toString(), in.clone());
+    }
+
+    @Override
+    public IndexInput slice(final String sliceDescription, final long offset, final long length)
+            throws IOException {
+        IOMetrics.increment(Counter.SLICES);
+        return new MeteringIndexInput(getFullSliceDescription(sliceDescription),
+                in.slice(sliceDescription, offset, length));
+    }
+
+    @Override
+    public RandomAccessInput randomAccessSlice(final long offset, final long length) throws IOException {
+        IOMetrics.increment(Counter.SLICES);
+        final RandomAccessInput slice = in.randomAccessSlice(offset, length);
+        return new RandomAccessInput() {
+            @Override
+            public byte readByte(final long pos) throws IOException {
+                final byte result = slice.readByte(pos);
+                IOMetrics.increment(Counter.READ_CALLS);
+                IOMetrics.increment(Counter.BYTES_READ);
+                return result;
+            }
+
+            @Override
+            public short readShort(final long pos) throws IOException {
+                final short result = slice.readShort(pos);
+                IOMetrics.increment(Counter.READ_CALLS);
+                IOMetrics.add(Counter.BYTES_READ, Short.BYTES);
+                return result;
+            }
+
+            @Override
+            public int readInt(final long pos) throws IOException {
+                final int result = slice.readInt(pos);
+                IOMetrics.increment(Counter.READ_CALLS);
+                IOMetrics.add(Counter.BYTES_READ, Integer.BYTES);
+                return result;
+            }
+
+            @Override
+            public long readLong(final long pos) throws IOException {
+                final long result = slice.readLong(pos);
+                IOMetrics.increment(Counter.READ_CALLS);
+                IOMetrics.add(Counter.BYTES_READ, Long.BYTES);
+                return result;
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+}
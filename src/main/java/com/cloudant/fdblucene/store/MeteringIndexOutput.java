@@ -0,0 +1,62 @@
+package com.cloudant.fdblucene.store;
+
+import java.io.IOException;
+
+import org.apache.lucene.store.IndexOutput;
+
+import com.cloudant.fdblucene.store.IOMetrics.Counter;
+import com.cloudant.fdblucene.store.IOMetrics.Latency;
+
+/**
+ * Counts writes to the wrapped output.
+ *
+ */
+final class MeteringIndexOutput extends IndexOutput {
+
+    private final IndexOutput out;
+    private final boolean merge;
+
+    MeteringIndexOutput(final IndexOutput out, final boolean merge) {
+        super("MeteringIndexOutput(" + out + ")", out.getName());
+        this.out = out;
+        this.merge = merge;
+    }
+
+    @Override
+    public void writeByte(final byte b) throws IOException {
+        out.writeByte(b);
+        IOMetrics.increment(Counter.WRITE_CALLS);
+        IOMetrics.increment(Counter.BYTES_WRITTEN);
+        if (merge) {
+            IOMetrics.increment(Counter.MERGE_BYTES_WRITTEN);
+        }
+    }
+
+    @Override
+    public void writeBytes(final byte[] b, final int offset, final int length) throws IOException {
+        final long start = System.nanoTime();
+        out.writeBytes(b, offset, length);
+        IOMetrics.record(Latency.WRITE, start);
+        IOMetrics.increment(Counter.WRITE_CALLS);
+        IOMetrics.add(Counter.BYTES_WRITTEN, length);
+        if (merge) {
+            IOMetrics.add(Counter.MERGE_BYTES_WRITTEN, length);
+        }
+    }
+
+    @Override
+    public long getFilePointer() {
+        return out.getFilePointer();
+    }
+
+    @Override
+    public long getChecksum() throws IOException {
+        return out.getChecksum();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+}
@@ -0,0 +1,38 @@
+package com.cloudant.fdblucene.store;
+
+/**
+ * Caches nothing. A CachingDirectory does not read through it at all, so it
+ * counts nothing there; any other caller's reads are counted as misses.
+ *
+ */
+public final class NoBlockCache extends BlockCache {
+
+    public NoBlockCache(final int blockSize) {
+        super(blockSize);
+    }
+
+    @Override
+    public boolean read(final String file, final long block, final int blockOffset, final byte[] dest,
+            final int offset, final int length) {
+        misses.incrementAndGet();
+        return false;
+    }
+
+    @Override
+    public void put(final String file, final long block, final byte[] data, final int length) {
+    }
+
+    @Override
+    public void invalidate(final String file) {
+    }
+
+    @Override
+    public void clear() {
+    }
+
+    @Override
+    public long bytesCached() {
+        return 0;
+    }
+
+}